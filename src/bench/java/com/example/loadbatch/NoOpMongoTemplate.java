@@ -0,0 +1,121 @@
+package com.example.loadbatch;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.result.InsertOneResult;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MongoTemplate sem servidor para o benchmark de throughput: getCollection devolve uma coleção que encoda cada
+ * documento em BSON (mesmo custo de CPU do driver) e descarta, com latência opcional por round-trip para simular
+ * a rede/cluster. Só implementa o que o writer, o manifesto e o modo upsert usam.
+ */
+class NoOpMongoTemplate extends MongoTemplate {
+
+    private static final CodecRegistry CODEC_REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    private final long roundTripNanos;
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder bsonBytes = new LongAdder();
+
+    NoOpMongoTemplate(long roundTripNanos) {
+        super(noOpFactory());
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    long getDocuments() {
+        return documents.sum();
+    }
+
+    long getBsonBytes() {
+        return bsonBytes.sum();
+    }
+
+    @Override
+    public MongoCollection<Document> getCollection(String collectionName) {
+        return collection(new MongoNamespace("bench", collectionName), Document.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> MongoCollection<T> collection(MongoNamespace namespace, Class<T> documentClass) {
+        return (MongoCollection<T>) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "getNamespace" -> namespace;
+                case "getDocumentClass" -> documentClass;
+                case "getCodecRegistry" -> CODEC_REGISTRY;
+                case "getWriteConcern" -> WriteConcern.ACKNOWLEDGED;
+                case "withDocumentClass" -> collection(namespace, (Class<?>) args[0]);
+                case "withWriteConcern", "withReadConcern", "withReadPreference", "withCodecRegistry", "withTimeout" -> proxy;
+                case "bulkWrite" -> {
+                    for (Object model : (List<?>) args[args.length == 1 || args[0] instanceof List ? 0 : 1]) {
+                        if (model instanceof InsertOneModel<?> insert) {
+                            encode(insert.getDocument());
+                        } else if (model instanceof ReplaceOneModel<?> replace) {
+                            encode(replace.getReplacement());
+                        }
+                    }
+                    roundTrip();
+                    yield BulkWriteResult.unacknowledged();
+                }
+                case "insertOne" -> {
+                    encode(args[args.length == 1 || !(args[0] instanceof com.mongodb.client.ClientSession) ? 0 : 1]);
+                    roundTrip();
+                    yield InsertOneResult.unacknowledged();
+                }
+                case "createIndex" -> "bench_index";
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "NoOpMongoCollection(" + namespace + ")";
+                default -> throw new UnsupportedOperationException("Not supported by the benchmark sink: " + method.getName());
+            });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void encode(Object document) {
+        Codec codec = CODEC_REGISTRY.get(document.getClass());
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, document, ENCODER_CONTEXT);
+        }
+        documents.increment();
+        bsonBytes.add(buffer.getPosition());
+    }
+
+    private void roundTrip() {
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+
+    private static MongoDatabaseFactory noOpFactory() {
+        MongoExceptionTranslator translator = new MongoExceptionTranslator();
+        return (MongoDatabaseFactory) Proxy.newProxyInstance(NoOpMongoTemplate.class.getClassLoader(),
+            new Class<?>[]{MongoDatabaseFactory.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "getExceptionTranslator" -> translator;
+                case "isTransactionActive" -> false;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "NoOpMongoDatabaseFactory";
+                default -> throw new UnsupportedOperationException("Not supported by the benchmark sink: " + method.getName());
+            });
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.loadbatch;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark ponta a ponta do importJob: gera um corpus sintético com o {@link MockInvoiceGenerator}, sobe o
+ * contexto Spring real uma vez por configuração (varrendo threads × chunk-size × writer-batch-size) e grava
+ * throughput, p50/p99 e pico de heap em CSV e JSON. O Mongo é trocado pelo {@link NoOpMongoTemplate}, que
+ * encoda o BSON e descarta, com latência opcional por bulk write.
+ * <p>
+ * Latências vêm dos timers que o Spring Batch já registra no {@code Metrics.globalRegistry}
+ * ({@code spring.batch.item.read}, {@code spring.batch.item.process}, {@code spring.batch.chunk.write}).
+ * <p>
+ * Uso: {@code ./gradlew throughputBenchmark -PbenchArgs="--files=20000 --threads=4,8,16 --round-trip-ms=2"}
+ */
+public class ThroughputBenchmark {
+
+    private static final String[] TIMERS = {"spring.batch.item.read", "spring.batch.item.process", "spring.batch.chunk.write"};
+    private static final double[] PERCENTILES = {0.5, 0.99};
+
+    private int files = 5000;
+    private int items = 0;
+    private List<Integer> threads = List.of(4, 8, 16);
+    private List<Integer> chunkSizes = List.of(500, 4000);
+    private List<Integer> writerBatchSizes = List.of(1000, 8000);
+    private long roundTripMicros = 0;
+    private int repeat = 1;
+    private int warmup = 1;
+    private Path out = Path.of("build/bench");
+    private Path corpus;
+    private final List<String> overrides = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        ThroughputBenchmark benchmark = new ThroughputBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "files" -> files = Integer.parseInt(value);
+                case "items" -> items = Integer.parseInt(value);
+                case "threads" -> threads = intList(value);
+                case "chunk-sizes" -> chunkSizes = intList(value);
+                case "writer-batch-sizes" -> writerBatchSizes = intList(value);
+                case "round-trip-ms" -> roundTripMicros = Math.round(Double.parseDouble(value) * 1000);
+                case "repeat" -> repeat = Integer.parseInt(value);
+                case "warmup" -> warmup = Integer.parseInt(value);
+                case "out" -> out = Path.of(value);
+                case "corpus" -> corpus = Path.of(value);
+                // qualquer outra propriedade do app, ex.: --set=load-batch.converter=stax
+                case "set" -> overrides.add(value);
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+    }
+
+    private static List<Integer> intList(String value) {
+        return Stream.of(value.split(",")).map(String::trim).map(Integer::valueOf).toList();
+    }
+
+    private void run() throws Exception {
+        Files.createDirectories(out);
+        Path workDir = Files.createTempDirectory("load-batch-bench");
+        try {
+            Path inputDir = corpus;
+            long corpusBytes;
+            if (inputDir == null) {
+                inputDir = workDir.resolve("corpus");
+                corpusBytes = new MockInvoiceGenerator(42, LocalDate.of(2026, 2, 1)).writeCorpus(inputDir, files, items);
+            } else {
+                try (Stream<Path> list = Files.list(inputDir)) {
+                    corpusBytes = list.filter(p -> p.toString().endsWith(".xml")).mapToLong(p -> p.toFile().length()).sum();
+                }
+            }
+            System.out.printf(Locale.ROOT, "Corpus %s: %.1f MB%n", inputDir, corpusBytes / 1e6);
+
+            int runIndex = 0;
+            for (int i = 0; i < warmup; i++) {
+                Result result = runOnce(workDir, inputDir, threads.get(0), chunkSizes.get(0), writerBatchSizes.get(0), runIndex++);
+                System.out.println("warmup  " + result.summary());
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (int threadCount : threads) {
+                for (int chunkSize : chunkSizes) {
+                    for (int writerBatchSize : writerBatchSizes) {
+                        for (int r = 0; r < repeat; r++) {
+                            Result result = runOnce(workDir, inputDir, threadCount, chunkSize, writerBatchSize, runIndex++);
+                            results.add(result);
+                            System.out.println("run     " + result.summary());
+                        }
+                    }
+                }
+            }
+            writeCsv(out.resolve("throughput.csv"), results);
+            writeJson(out.resolve("throughput.json"), results);
+            System.out.println("Report written to " + out.toAbsolutePath());
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private Result runOnce(Path workDir, Path inputDir, int threadCount, int chunkSize, int writerBatchSize, int runIndex)
+            throws IOException {
+        Path runDir = Files.createDirectories(workDir.resolve("run-" + runIndex));
+        List<String> args = new ArrayList<>(List.of(
+            "--spring.main.banner-mode=off",
+            "--spring.main.web-application-type=none",
+            "--spring.autoconfigure.exclude="
+                + "org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration,"
+                + "org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration,"
+                + "org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration",
+            "--spring.data.mongodb.uri=mongodb://bench-sink/bench",
+            // banco H2 novo por execução: mesmos job parameters não podem repetir numa instância já COMPLETED
+            "--spring.datasource.url=jdbc:h2:mem:bench" + runIndex,
+            "--logging.level.root=WARN",
+            "--logging.level.com.example.loadbatch=WARN",
+            // avisos de restart do step multi-thread se repetem a cada execução
+            "--logging.level.org.springframework.batch=ERROR",
+            "--load-batch.input-dir=" + inputDir,
+            "--load-batch.failed-dir=" + runDir.resolve("failed"),
+            "--load-batch.error-log=" + runDir.resolve("failed/skip_list.csv"),
+            "--load-batch.summary-log=" + runDir.resolve("summary.csv"),
+            "--load-batch.incremental=false",
+            "--load-batch.threads=" + threadCount,
+            "--load-batch.chunk-size=" + chunkSize,
+            "--load-batch.writer-batch-size=" + writerBatchSize));
+        for (String override : overrides) {
+            // a mesma chave repetida na linha de comando vira "a,b" no Spring: a sobrescrita substitui a padrão
+            String key = "--" + override.substring(0, override.indexOf('=') + 1);
+            args.removeIf(arg -> arg.startsWith(key));
+            args.add("--" + override);
+        }
+
+        NoOpMongoTemplate sink = new NoOpMongoTemplate(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        SimpleMeterRegistry registry = newRegistry();
+        Metrics.addRegistry(registry);
+        System.gc();
+        resetPeakHeap();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadBatchApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("mongoTemplate", sink))
+                .run(args.toArray(String[]::new))) {
+            JobExecution execution = lastExecution(context.getBean(JobExplorer.class));
+            long peakHeap = peakHeap();
+
+            long read = 0;
+            long written = 0;
+            for (StepExecution step : execution.getStepExecutions()) {
+                // no modo particionado o step gerente soma os workers
+                if (!step.getStepName().contains(":")) {
+                    read += step.getReadCount();
+                    written += step.getWriteCount();
+                }
+            }
+            long durationMs = Duration.between(execution.getStartTime(), execution.getEndTime()).toMillis();
+            return new Result(threadCount, chunkSize, writerBatchSize, execution.getStatus().toString(), read, written,
+                sink.getBsonBytes(), durationMs, percentiles(registry, TIMERS[0]), percentiles(registry, TIMERS[1]),
+                percentiles(registry, TIMERS[2]), peakHeap);
+        } finally {
+            Metrics.removeRegistry(registry);
+            Metrics.globalRegistry.clear();
+        }
+    }
+
+    // um timer por nome (tags de job/step/status descartadas) com p50/p99 calculados no cliente, sem expirar durante a execução
+    private static SimpleMeterRegistry newRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                return id.getName().startsWith("spring.batch.") ? id.replaceTags(Tags.empty()) : id;
+            }
+
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() != Meter.Type.TIMER || !id.getName().startsWith("spring.batch.")) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                    .percentiles(PERCENTILES)
+                    .expiry(Duration.ofDays(1))
+                    .bufferLength(1)
+                    .build()
+                    .merge(config);
+            }
+        });
+        return registry;
+    }
+
+    private static double[] percentiles(SimpleMeterRegistry registry, String name) {
+        double[] values = new double[PERCENTILES.length];
+        Timer timer = registry.find(name).timer();
+        if (timer == null) {
+            return values;
+        }
+        ValueAtPercentile[] snapshot = timer.takeSnapshot().percentileValues();
+        for (int i = 0; i < snapshot.length && i < values.length; i++) {
+            values[i] = snapshot[i].value(TimeUnit.MILLISECONDS);
+        }
+        return values;
+    }
+
+    private static JobExecution lastExecution(JobExplorer explorer) {
+        List<JobInstance> instances = explorer.getJobInstances("importJob", 0, 1);
+        if (instances.isEmpty()) {
+            throw new IllegalStateException("importJob did not run");
+        }
+        return explorer.getJobExecutions(instances.get(0)).stream()
+            .max(Comparator.comparing(JobExecution::getId))
+            .orElseThrow(() -> new IllegalStateException("importJob has no execution"));
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // soma dos picos por pool: limite superior do pico real (os pools não atingem o máximo no mesmo instante)
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void writeCsv(Path path, List<Result> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            writer.println("threads,chunk_size,writer_batch_size,status,read,written,duration_ms,files_per_sec,bson_mb_per_sec,"
+                + "read_p50_ms,read_p99_ms,process_p50_ms,process_p99_ms,write_p50_ms,write_p99_ms,peak_heap_mb");
+            for (Result r : results) {
+                writer.printf(Locale.ROOT, "%d,%d,%d,%s,%d,%d,%d,%.1f,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f%n",
+                    r.threads, r.chunkSize, r.writerBatchSize, r.status, r.readCount, r.written, r.durationMs,
+                    r.filesPerSec(), r.bsonMbPerSec(), r.read[0], r.read[1], r.process[0], r.process[1],
+                    r.write[0], r.write[1], r.peakHeap / 1e6);
+            }
+        }
+    }
+
+    private static void writeJson(Path path, List<Result> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            writer.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                writer.printf(Locale.ROOT,
+                    "  {\"threads\": %d, \"chunkSize\": %d, \"writerBatchSize\": %d, \"status\": \"%s\", \"read\": %d, "
+                        + "\"written\": %d, \"durationMs\": %d, \"filesPerSec\": %.1f, \"bsonMbPerSec\": %.2f, "
+                        + "\"readMs\": {\"p50\": %.3f, \"p99\": %.3f}, \"processMs\": {\"p50\": %.3f, \"p99\": %.3f}, "
+                        + "\"writeMs\": {\"p50\": %.3f, \"p99\": %.3f}, \"peakHeapMb\": %.1f}%s%n",
+                    r.threads, r.chunkSize, r.writerBatchSize, r.status, r.readCount, r.written, r.durationMs,
+                    r.filesPerSec(), r.bsonMbPerSec(), r.read[0], r.read[1], r.process[0], r.process[1],
+                    r.write[0], r.write[1], r.peakHeap / 1e6, i < results.size() - 1 ? "," : "");
+            }
+            writer.println("]");
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private record Result(
+        int threads,
+        int chunkSize,
+        int writerBatchSize,
+        String status,
+        long readCount,
+        long written,
+        long bsonBytes,
+        long durationMs,
+        double[] read,
+        double[] process,
+        double[] write,
+        long peakHeap
+    ) {
+        double filesPerSec() {
+            return durationMs > 0 ? written * 1000.0 / durationMs : 0;
+        }
+
+        double bsonMbPerSec() {
+            return durationMs > 0 ? bsonBytes / 1e3 / durationMs : 0;
+        }
+
+        String summary() {
+            return String.format(Locale.ROOT,
+                "threads=%d chunk=%d writerBatch=%d %s files=%d %.0f files/s process p50=%.2fms p99=%.2fms peakHeap=%.0fMB",
+                threads, chunkSize, writerBatchSize, status, written, filesPerSec(), process[0], process[1], peakHeap / 1e6);
+        }
+    }
+}
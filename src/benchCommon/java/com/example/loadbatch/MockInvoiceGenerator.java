@@ -0,0 +1,170 @@
+package com.example.loadbatch;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Gera faturas XML no mesmo esquema do {@code mock_data.py}, com semente fixa (corpus reprodutível)
+ * e quantidade de itens configurável para montar faturas pequenas, médias e grandes.
+ * Usado pelos benchmarks; o {@code mock_data.py} continua sendo o gerador de massa para testes manuais.
+ */
+public class MockInvoiceGenerator {
+
+    private static final String[][] CATEGORIES = {
+        {"celular", "Plano Pós-Pago 20GB", "linha"},
+        {"televisao", "TV HD Empresarial (1 ponto)", "ponto"},
+        {"fibra", "Internet Fibra 300 Mbps", "servico"},
+        {"voz", "Voz Ilimitada", "linha"},
+        {"iot", "Conectividade IoT", "servico"},
+    };
+
+    private static final String[] CLIENTES = {
+        "Empresa Alpha Ltda",
+        "Empresa Beta SA",
+        "Empresa Gamma Tech",
+        "Empresa Delta Telecom",
+        "Empresa Nova Telecom",
+        "Empresa Orion Sistemas",
+        "Empresa Aurora Digital",
+        "Empresa Sigma Networks",
+    };
+
+    private static final String[][] TAXES = {{"ICMS", "0.25"}, {"PIS", "0.0165"}, {"COFINS", "0.076"}};
+    private static final DateTimeFormatter ISO_UTC = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private final Random random;
+    private final ZonedDateTime dueDate;
+    private final ZonedDateTime now;
+
+    public MockInvoiceGenerator(long seed, LocalDate dueDate) {
+        this.random = new Random(seed);
+        this.dueDate = dueDate.atStartOfDay(ZoneOffset.UTC);
+        // referência fixa em vez de "agora" para o corpus não mudar entre execuções
+        this.now = this.dueDate.minusDays(30);
+    }
+
+    /**
+     * @param itemCount quantidade de {@code <item>} em {@code itens}; {@code <= 0} sorteia 2..5 como o mock_data.py
+     */
+    public String generateXml(int index, int itemCount) {
+        int items = itemCount > 0 ? itemCount : 2 + random.nextInt(4);
+        ZonedDateTime start = now.minusDays(random.nextInt(121)).withDayOfMonth(1);
+        ZonedDateTime end = start.plusDays(30);
+        ZonedDateTime emissao = end.plusDays(1);
+
+        StringBuilder xml = new StringBuilder(1024 + items * 600);
+        xml.append("<invoice>");
+        leaf(xml, "tipo", "fatura_telecom");
+        xml.append("<operadora>");
+        leaf(xml, "nome", "Vivo");
+        leaf(xml, "cnpj", "00.000.000/0001-01");
+        xml.append("</operadora><cliente>");
+        leaf(xml, "razaoSocial", CLIENTES[random.nextInt(CLIENTES.length)]);
+        leaf(xml, "cnpj", String.format("%08d/0001-%02d", 10000000 + (index % 90000000), (index % 90) + 10));
+        xml.append("</cliente><contrato>");
+        leaf(xml, "numero", String.valueOf(40000000 + random.nextInt(10000000)));
+        xml.append("</contrato><periodoReferencia>");
+        leaf(xml, "inicio", ISO_UTC.format(start));
+        leaf(xml, "fim", ISO_UTC.format(end));
+        xml.append("</periodoReferencia><datas>");
+        leaf(xml, "emissao", ISO_UTC.format(emissao));
+        leaf(xml, "vencimento", ISO_UTC.format(dueDate));
+        xml.append("</datas>");
+        leaf(xml, "moeda", "BRL");
+
+        BigDecimal totalServicos = BigDecimal.ZERO;
+        Map<String, BigDecimal> impostosTotais = new LinkedHashMap<>();
+        for (String[] tax : TAXES) {
+            impostosTotais.put(tax[0], BigDecimal.ZERO);
+        }
+
+        xml.append("<itens>");
+        for (int i = 0; i < items; i++) {
+            String[] category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            BigDecimal valorBase = BigDecimal.valueOf(40 + random.nextDouble() * 160).setScale(2, RoundingMode.HALF_EVEN);
+            BigDecimal subtotalImpostos = BigDecimal.ZERO;
+
+            xml.append("<item>");
+            leaf(xml, "categoria", category[0]);
+            leaf(xml, "descricao", category[1]);
+            leaf(xml, "quantidade", "1");
+            leaf(xml, "unidade", category[2]);
+            leaf(xml, "valorBase", valorBase.toPlainString());
+            xml.append("<impostos>");
+            for (String[] tax : TAXES) {
+                BigDecimal valor = valorBase.multiply(new BigDecimal(tax[1])).setScale(2, RoundingMode.HALF_EVEN);
+                xml.append("<item>");
+                leaf(xml, "tipo", tax[0]);
+                leaf(xml, "aliquota", tax[1]);
+                leaf(xml, "baseCalculo", valorBase.toPlainString());
+                leaf(xml, "valor", valor.toPlainString());
+                xml.append("</item>");
+                subtotalImpostos = subtotalImpostos.add(valor);
+                impostosTotais.merge(tax[0], valor, BigDecimal::add);
+            }
+            xml.append("</impostos>");
+            leaf(xml, "subtotalImpostos", subtotalImpostos.toPlainString());
+            leaf(xml, "total", valorBase.add(subtotalImpostos).toPlainString());
+            xml.append("</item>");
+            totalServicos = totalServicos.add(valorBase);
+        }
+        xml.append("</itens>");
+
+        BigDecimal totalImpostos = impostosTotais.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        xml.append("<totais>");
+        leaf(xml, "valorServicosSemImpostos", totalServicos.toPlainString());
+        xml.append("<impostos>");
+        for (Map.Entry<String, BigDecimal> tax : impostosTotais.entrySet()) {
+            leaf(xml, tax.getKey(), tax.getValue().toPlainString());
+        }
+        xml.append("</impostos>");
+        leaf(xml, "totalImpostos", totalImpostos.toPlainString());
+        leaf(xml, "totalGeral", totalServicos.add(totalImpostos).toPlainString());
+        xml.append("</totais><pagamento>");
+        leaf(xml, "metodo", "debito_automatico");
+        leaf(xml, "status", "em_aberto");
+        xml.append("</pagamento><auditoria>");
+        leaf(xml, "criadoEm", ISO_UTC.format(emissao));
+        leaf(xml, "atualizadoEm", ISO_UTC.format(emissao));
+        leaf(xml, "fonte", "mock_generator");
+        xml.append("</auditoria></invoice>");
+        return xml.toString();
+    }
+
+    // grava invoice_0001.xml .. invoice_N.xml em dir (mesmos nomes do mock_data.py); devolve o total de bytes
+    public long writeCorpus(Path dir, int count, int itemCount) throws IOException {
+        Files.createDirectories(dir);
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] content = generateXml(i, itemCount).getBytes(StandardCharsets.UTF_8);
+            Files.write(dir.resolve(String.format("invoice_%04d.xml", i + 1)), content);
+            bytes += content.length;
+        }
+        return bytes;
+    }
+
+    private static void leaf(StringBuilder xml, String name, String value) {
+        xml.append('<').append(name).append('>');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> xml.append("&amp;");
+                case '<' -> xml.append("&lt;");
+                case '>' -> xml.append("&gt;");
+                default -> xml.append(c);
+            }
+        }
+        xml.append("</").append(name).append('>');
+    }
+}
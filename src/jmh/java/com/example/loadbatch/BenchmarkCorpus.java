@@ -0,0 +1,30 @@
+package com.example.loadbatch;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// tamanhos de fatura usados nos benchmarks: itens em <itens> (o mock_data.py sorteia 2..5)
+final class BenchmarkCorpus {
+
+    static final long SEED = 42;
+    static final LocalDate DUE_DATE = LocalDate.of(2026, 2, 1);
+
+    private BenchmarkCorpus() {}
+
+    static int items(String size) {
+        return switch (size) {
+            case "small" -> 2;
+            case "medium" -> 20;
+            case "large" -> 200;
+            default -> throw new IllegalArgumentException("Unknown invoice size: " + size);
+        };
+    }
+
+    static MockInvoiceGenerator generator() {
+        return new MockInvoiceGenerator(SEED, DUE_DATE);
+    }
+
+    static byte[] invoice(String size) {
+        return generator().generateXml(1, items(size)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.loadbatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// conversão do xmlToJsonProcessor (InvoiceProcessor) por conversor e tamanho de fatura
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConvertBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"jackson", "stax", "typed"})
+    public String converter;
+
+    private byte[] content;
+    private InvoiceProcessor processor;
+
+    @Setup
+    public void setUp() {
+        content = BenchmarkCorpus.invoice(size);
+        processor = new InvoiceProcessor(converter, false, null);
+    }
+
+    @Benchmark
+    public InvoiceRecord convert() throws Exception {
+        return processor.process(new FilePayload("invoice_0001.xml", content));
+    }
+}
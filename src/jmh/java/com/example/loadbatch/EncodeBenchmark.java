@@ -0,0 +1,69 @@
+package com.example.loadbatch;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// o que o driver faz com cada InvoiceRecord no bulk write: Document (caminho jackson) ou RawBsonDocument (stax)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncodeBenchmark {
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Map<String, Object> data;
+    private RawBsonDocument raw;
+    private Codec<Document> documentCodec;
+    private final RawBsonDocumentCodec rawCodec = new RawBsonDocumentCodec();
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        byte[] content = BenchmarkCorpus.invoice(size);
+        data = new XmlMapper().readValue(content, Map.class);
+        raw = new StaxBsonConverter().convert(new ByteArrayInputStream(content), "invoice_0001.xml", null);
+        documentCodec = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+    }
+
+    @Benchmark
+    public int documentBuildAndEncode() {
+        Document doc = new Document(data);
+        doc.put("source_file", "invoice_0001.xml");
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            documentCodec.encode(writer, doc, ENCODER_CONTEXT);
+        }
+        return buffer.getPosition();
+    }
+
+    @Benchmark
+    public int rawEncode() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            rawCodec.encode(writer, raw, ENCODER_CONTEXT);
+        }
+        return buffer.getPosition();
+    }
+}
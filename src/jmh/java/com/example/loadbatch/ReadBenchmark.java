@@ -0,0 +1,65 @@
+package com.example.loadbatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// WholeFileItemReader.read sobre um corpus em disco (page cache quente)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadBenchmark {
+
+    private static final int FILES = 256;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"heap", "mapped"})
+    public String readMode;
+
+    private Path dir;
+    private FileSystemResource[] files;
+    private WholeFileItemReader reader;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("read-bench-");
+        BenchmarkCorpus.generator().writeCorpus(dir, FILES, BenchmarkCorpus.items(size));
+        try (Stream<Path> paths = Files.list(dir)) {
+            files = paths.sorted().map(FileSystemResource::new).toArray(FileSystemResource[]::new);
+        }
+        reader = "mapped".equals(readMode)
+            ? new WholeFileItemReader(new DirectBufferPool(65536, 64))
+            : new WholeFileItemReader();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public long read() throws Exception {
+        reader.setResource(files[next++ % FILES]);
+        FilePayload payload = reader.read();
+        long bytes = payload.getSize();
+        payload.release();
+        return bytes;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.loadbatch;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ajusta o writer-batch-size e a quantidade de workers ativos durante a execução, no estilo AIMD, a partir do
+ * throughput (documentos gravados/s) e da latência média dos bulk writes do {@link BatchMetricsListener}:
+ * <ul>
+ *   <li>latência acima do alvo: corte multiplicativo (batch pela metade, workers -25%);</li>
+ *   <li>throughput caiu mais de 10% depois de um aumento: desfaz o aumento;</li>
+ *   <li>senão: aumento aditivo, alternando entre batch (+min-writer-batch-size) e workers (+1).</li>
+ * </ul>
+ * Os workers são limitados por um semáforo em volta de cada chunk ({@link #gate}); as threads do pool continuam
+ * existindo, só ficam paradas. No modo particionado só o batch size é ajustado. Os valores finais e o melhor
+ * intervalo são logados no afterStep e gravados no ExecutionContext do step.
+ */
+public class AdaptiveTuner implements StepExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveTuner.class);
+
+    private enum Dimension { NONE, BATCH, WORKERS }
+
+    private final BatchMetricsListener metrics;
+    private final long intervalMs;
+    private final long targetWriteNanos;
+    private final int minBatch;
+    private final int maxBatch;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final Gate workerGate;
+
+    private volatile int writerBatchSize;
+    private volatile int workers;
+    private ScheduledExecutorService scheduler;
+
+    // estado do intervalo anterior (só a thread do scheduler mexe)
+    private long lastTick;
+    private long lastWritten;
+    private long lastWrites;
+    private double lastWriteNanos;
+    private double lastThroughput;
+    private Dimension lastIncrease = Dimension.NONE;
+    private boolean increaseBatchNext = true;
+    private double bestThroughput;
+    private int bestBatch;
+    private int bestWorkers;
+
+    public AdaptiveTuner(
+        BatchMetricsListener metrics,
+        MeterRegistry registry,
+        long intervalMs,
+        long targetWriteMs,
+        int initialBatch,
+        int minBatch,
+        int maxBatch,
+        int minWorkers,
+        int maxWorkers
+    ) {
+        this.metrics = metrics;
+        this.intervalMs = intervalMs;
+        this.targetWriteNanos = TimeUnit.MILLISECONDS.toNanos(targetWriteMs);
+        this.minBatch = Math.max(1, minBatch);
+        this.maxBatch = Math.max(this.minBatch, maxBatch);
+        this.minWorkers = Math.max(1, minWorkers);
+        this.maxWorkers = Math.max(this.minWorkers, maxWorkers);
+        this.writerBatchSize = Math.min(this.maxBatch, Math.max(this.minBatch, initialBatch));
+        this.workers = this.maxWorkers;
+        this.workerGate = new Gate(this.maxWorkers);
+
+        Gauge.builder("load.batch.autotune.writer.batch.size", this, t -> t.writerBatchSize)
+            .description("Writer batch size chosen by the auto-tuner").register(registry);
+        Gauge.builder("load.batch.autotune.workers", this, t -> t.workers)
+            .description("Active chunk workers allowed by the auto-tuner").register(registry);
+    }
+
+    public int writerBatchSize() {
+        return writerBatchSize;
+    }
+
+    // cada task do step multi-thread processa um chunk; só "workers" delas rodam ao mesmo tempo
+    public TaskExecutor gate(TaskExecutor delegate) {
+        return task -> delegate.execute(() -> {
+            workerGate.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                workerGate.release();
+            }
+        });
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        lastTick = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "auto-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Auto-tune enabled: writerBatchSize={} [{}..{}] workers={} [{}..{}] target bulk write={}ms",
+            writerBatchSize, minBatch, maxBatch, workers, minWorkers, maxWorkers, TimeUnit.NANOSECONDS.toMillis(targetWriteNanos));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        scheduler.shutdownNow();
+        logger.info(String.format(Locale.ROOT,
+            "Auto-tune converged on writerBatchSize=%d workers=%d (best interval: %.0f docs/s at writerBatchSize=%d workers=%d)",
+            writerBatchSize, workers, bestThroughput, bestBatch, bestWorkers));
+        stepExecution.getExecutionContext().putInt("autotune.writerBatchSize", writerBatchSize);
+        stepExecution.getExecutionContext().putInt("autotune.workers", workers);
+        return null;
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            long written = metrics.writtenCount();
+            long writes = metrics.writeCount();
+            double writeNanos = metrics.writeTotalNanos();
+            double throughput = (written - lastWritten) * 1e9 / Math.max(1, now - lastTick);
+            double latency = writes > lastWrites ? (writeNanos - lastWriteNanos) / (writes - lastWrites) : 0;
+            boolean idle = written == lastWritten;
+            lastTick = now;
+            lastWritten = written;
+            lastWrites = writes;
+            lastWriteNanos = writeNanos;
+            if (idle) {
+                return;
+            }
+            if (throughput > bestThroughput) {
+                bestThroughput = throughput;
+                bestBatch = writerBatchSize;
+                bestWorkers = workers;
+            }
+
+            String action;
+            if (latency > targetWriteNanos) {
+                setBatch(writerBatchSize / 2);
+                setWorkers(workers - Math.max(1, workers / 4));
+                lastIncrease = Dimension.NONE;
+                action = "decrease (bulk write latency)";
+            } else if (lastIncrease != Dimension.NONE && throughput < lastThroughput * 0.9) {
+                if (lastIncrease == Dimension.BATCH) {
+                    setBatch(writerBatchSize - minBatch);
+                } else {
+                    setWorkers(workers - 1);
+                }
+                lastIncrease = Dimension.NONE;
+                action = "undo (throughput dropped)";
+            } else {
+                lastIncrease = increase();
+                action = lastIncrease == Dimension.NONE ? "hold (at bounds)" : "increase " + lastIncrease.name().toLowerCase(Locale.ROOT);
+            }
+            lastThroughput = throughput;
+            logger.info(String.format(Locale.ROOT, "Auto-tune: %.0f docs/s, bulk write avg %.1fms -> %s: writerBatchSize=%d workers=%d",
+                throughput, latency / 1e6, action, writerBatchSize, workers));
+        } catch (RuntimeException e) {
+            // o agendamento para se a task lançar exceção
+            logger.warn("Auto-tune tick failed", e);
+        }
+    }
+
+    private Dimension increase() {
+        boolean canBatch = writerBatchSize < maxBatch;
+        boolean canWorkers = workers < maxWorkers;
+        Dimension next = (increaseBatchNext && canBatch) || !canWorkers ? Dimension.BATCH : Dimension.WORKERS;
+        if (next == Dimension.BATCH && !canBatch) {
+            return Dimension.NONE;
+        }
+        increaseBatchNext = next != Dimension.BATCH;
+        if (next == Dimension.BATCH) {
+            setBatch(writerBatchSize + minBatch);
+        } else {
+            setWorkers(workers + 1);
+        }
+        return next;
+    }
+
+    private void setBatch(int value) {
+        writerBatchSize = Math.min(maxBatch, Math.max(minBatch, value));
+    }
+
+    private void setWorkers(int value) {
+        int target = Math.min(maxWorkers, Math.max(minWorkers, value));
+        int delta = target - workers;
+        if (delta > 0) {
+            workerGate.release(delta);
+        } else if (delta < 0) {
+            // chunks em andamento terminam normalmente; as permissões devolvidas é que deixam de existir
+            workerGate.reduce(-delta);
+        }
+        workers = target;
+    }
+
+    private static final class Gate extends Semaphore {
+        Gate(int permits) {
+            super(permits);
+        }
+
+        void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+}
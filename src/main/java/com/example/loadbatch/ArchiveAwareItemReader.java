@@ -0,0 +1,72 @@
+package com.example.loadbatch;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+
+/**
+ * Delegate do {@code MultiResourceItemReader}: arquivos comuns vão para o {@link WholeFileItemReader}, pacotes
+ * compactados são percorridos entrada a entrada pelo {@link ArchiveEntryReader}. Com saveState o número de
+ * entradas já entregues do pacote corrente vai para o ExecutionContext, então o restart de uma partição continua
+ * no meio do pacote.
+ */
+public class ArchiveAwareItemReader implements ItemStreamReader<FilePayload>, ResourceAwareItemReaderItemStream<FilePayload> {
+
+    private static final String POSITION_KEY = "archive.position";
+
+    private final WholeFileItemReader fileReader;
+
+    private Resource resource;
+    private ArchiveEntryReader archive;
+    private int restartPosition;
+
+    public ArchiveAwareItemReader(WholeFileItemReader fileReader) {
+        this.fileReader = fileReader;
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        this.resource = resource;
+        this.restartPosition = 0;
+        fileReader.setResource(resource);
+    }
+
+    @Override
+    public FilePayload read() throws Exception {
+        if (resource == null || !ArchiveEntryReader.isArchive(resource)) {
+            return fileReader.read();
+        }
+        if (archive == null) {
+            archive = ArchiveEntryReader.open(resource, restartPosition);
+        }
+        return archive.next();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        restartPosition = executionContext.containsKey(POSITION_KEY) ? executionContext.getInt(POSITION_KEY) : 0;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        executionContext.putInt(POSITION_KEY, archive != null ? archive.position() : restartPosition);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to close archive " + resource.getFilename(), e);
+        } finally {
+            archive = null;
+        }
+    }
+}
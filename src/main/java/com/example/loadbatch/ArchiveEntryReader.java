@@ -0,0 +1,292 @@
+package com.example.loadbatch;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lê os XMLs de dentro de um pacote compactado sem extrair para o disco: {@code .zip} (acesso direto às entradas
+ * pelo diretório central, permite dividir o arquivo em fatias), {@code .tar.gz}/{@code .tgz} (stream sequencial)
+ * e {@code .xml.gz} (um único XML). Um XML grande com várias faturas é tratado do mesmo jeito, com cada elemento
+ * como entrada ({@link XmlFragmentReader}). Cada entrada vira um {@link FilePayload} em heap com nome
+ * {@code pacote!/caminho/da/entrada.xml}, que é o que vai para {@code source_file}; no {@code .xml.gz} o nome é o
+ * do próprio arquivo.
+ * <p>
+ * Não é thread-safe: cada instância percorre um pacote (ou uma fatia dele) em sequência.
+ */
+public abstract class ArchiveEntryReader implements AutoCloseable {
+
+    public static final String ENTRY_SEPARATOR = "!/";
+
+    private final String archiveName;
+    private int position;
+
+    ArchiveEntryReader(String archiveName) {
+        this.archiveName = archiveName;
+    }
+
+    public static boolean isArchive(Resource resource) {
+        if (resource instanceof ZipSliceResource || resource instanceof XmlFragmentReader.XmlRangeResource) {
+            return true;
+        }
+        String name = lowerCaseName(resource);
+        return name.endsWith(".zip") || name.endsWith(".tar.gz") || name.endsWith(".tgz") || name.endsWith(".gz");
+    }
+
+    /**
+     * @param skip entradas já entregues numa execução anterior (restart do reader particionado)
+     */
+    public static ArchiveEntryReader open(Resource resource, int skip) throws IOException {
+        ArchiveEntryReader reader;
+        if (resource instanceof XmlFragmentReader.XmlRangeResource range) {
+            reader = XmlFragmentReader.open(range);
+        } else if (resource instanceof ZipSliceResource slice) {
+            reader = new Zip(slice.archiveName, new ZipFile(slice.getFile()), slice.from, slice.to);
+        } else {
+            String name = lowerCaseName(resource);
+            if (name.endsWith(".zip")) {
+                ZipFile zip = new ZipFile(resource.getFile());
+                reader = new Zip(resource.getFilename(), zip, 0, Integer.MAX_VALUE);
+            } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+                reader = new Tar(resource.getFilename(), resource.getInputStream());
+            } else {
+                reader = new Gzip(resource.getFilename(), resource.getInputStream(), resource.lastModified());
+            }
+        }
+        try {
+            while (reader.position < skip && reader.next() != null) {
+                // descarta o que já foi processado
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Divide um {@code .zip} com mais de {@code entriesPerSlice} XMLs em fatias independentes, para o particionador
+     * distribuir um pacote grande entre os workers. Outros formatos (stream gzip) não têm acesso direto e ficam
+     * inteiros.
+     */
+    public static List<Resource> split(Resource resource, int entriesPerSlice) throws IOException {
+        if (entriesPerSlice <= 0 || !lowerCaseName(resource).endsWith(".zip")) {
+            return List.of(resource);
+        }
+        List<Resource> slices = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(resource.getFile())) {
+            List<ZipEntry> entries = xmlEntries(zip);
+            if (entries.size() <= entriesPerSlice) {
+                return List.of(resource);
+            }
+            for (int from = 0; from < entries.size(); from += entriesPerSlice) {
+                int to = Math.min(entries.size(), from + entriesPerSlice);
+                long bytes = 0;
+                for (int i = from; i < to; i++) {
+                    bytes += Math.max(0, entries.get(i).getCompressedSize());
+                }
+                slices.add(new ZipSliceResource(resource, from, to, bytes));
+            }
+        }
+        return slices;
+    }
+
+    /** Próxima entrada XML, ou null no fim do pacote/fatia. */
+    public final FilePayload next() throws IOException {
+        FilePayload payload = readNext();
+        if (payload != null) {
+            position++;
+        }
+        return payload;
+    }
+
+    // entradas entregues desde o início do pacote/fatia
+    public final int position() {
+        return position;
+    }
+
+    protected abstract FilePayload readNext() throws IOException;
+
+    @Override
+    public abstract void close() throws IOException;
+
+    protected final FilePayload payload(String entryName, byte[] content, long lastModified) {
+        FilePayload payload = new FilePayload(archiveName + ENTRY_SEPARATOR + stripDot(entryName), content);
+        payload.setLastModified(lastModified);
+        return payload;
+    }
+
+    private static String lowerCaseName(Resource resource) {
+        String name = resource.getFilename();
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isXml(String entryName) {
+        return entryName.toLowerCase(Locale.ROOT).endsWith(".xml");
+    }
+
+    // tar criado com "tar -C dir ." grava ./a.xml
+    private static String stripDot(String entryName) {
+        return entryName.startsWith("./") ? entryName.substring(2) : entryName;
+    }
+
+    // ordem do diretório central; é ela que define as fatias
+    private static List<ZipEntry> xmlEntries(ZipFile zip) {
+        List<ZipEntry> entries = new ArrayList<>();
+        zip.stream()
+            .filter(entry -> !entry.isDirectory() && isXml(entry.getName()))
+            .forEach(entries::add);
+        return entries;
+    }
+
+    private static final class Zip extends ArchiveEntryReader {
+        private final ZipFile zip;
+        private final List<ZipEntry> entries;
+        private final int to;
+        private int index;
+
+        Zip(String archiveName, ZipFile zip, int from, int to) {
+            super(archiveName);
+            this.zip = zip;
+            this.entries = xmlEntries(zip);
+            this.index = from;
+            this.to = Math.min(to, entries.size());
+        }
+
+        @Override
+        protected FilePayload readNext() throws IOException {
+            if (index >= to) {
+                return null;
+            }
+            ZipEntry entry = entries.get(index++);
+            try (InputStream in = zip.getInputStream(entry)) {
+                return payload(entry.getName(), in.readAllBytes(), entry.getTime());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    private static final class Tar extends ArchiveEntryReader {
+        private final TarArchiveInputStream tar;
+
+        Tar(String archiveName, InputStream in) throws IOException {
+            super(archiveName);
+            try {
+                this.tar = new TarArchiveInputStream(new GzipCompressorInputStream(new BufferedInputStream(in, 1 << 16), true));
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        protected FilePayload readNext() throws IOException {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (entry.isFile() && isXml(entry.getName())) {
+                    return payload(entry.getName(), tar.readAllBytes(), entry.getModTime().getTime());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            tar.close();
+        }
+    }
+
+    private static final class Gzip extends ArchiveEntryReader {
+        private final String filename;
+        private final InputStream in;
+        private final long lastModified;
+        private boolean read;
+
+        Gzip(String filename, InputStream in, long lastModified) {
+            super(filename);
+            this.filename = filename;
+            this.in = in;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        protected FilePayload readNext() throws IOException {
+            if (read) {
+                return null;
+            }
+            read = true;
+            try (InputStream gzip = new GzipCompressorInputStream(new BufferedInputStream(in, 1 << 16), true)) {
+                FilePayload payload = new FilePayload(filename, gzip.readAllBytes());
+                payload.setLastModified(lastModified);
+                return payload;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Intervalo [from, to) das entradas XML de um {@code .zip}, tratado como uma unidade de leitura. */
+    static final class ZipSliceResource extends FileSystemResource {
+        private final String archiveName;
+        private final int from;
+        private final int to;
+        private final long bytes;
+
+        ZipSliceResource(Resource archive, int from, int to, long bytes) throws IOException {
+            super(archive.getFile());
+            this.archiveName = archive.getFilename();
+            this.from = from;
+            this.to = to;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getFilename() {
+            return archiveName + "#" + from;
+        }
+
+        // bytes compactados da fatia: é o custo que o particionador balanceia
+        @Override
+        public long contentLength() {
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ZipSliceResource slice && super.equals(other) && slice.from == from;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + from;
+        }
+
+        @Override
+        public String getDescription() {
+            return "zip slice [" + from + ", " + to + ") of " + super.getDescription();
+        }
+
+        // chave do ExecutionContext da partição (FilePartitioner)
+        String key() {
+            return from + ":" + to + ":" + bytes + ":" + archiveName;
+        }
+    }
+}
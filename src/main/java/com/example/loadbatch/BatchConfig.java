@@ -1,44 +1,51 @@
 package com.example.loadbatch;
 
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.mongodb.WriteConcern;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.BulkWriteOptions;
-import com.mongodb.client.model.InsertOneModel;
-import com.mongodb.client.model.WriteModel;
-import org.bson.Document;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.FaultTolerantStepBuilder;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
 import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.file.MultiResourceItemReader;
 import org.springframework.batch.item.file.builder.MultiResourceItemReaderBuilder;
+import org.springframework.batch.item.support.SynchronizedItemStreamReader;
+import org.springframework.batch.item.support.builder.SynchronizedItemStreamReaderBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.Resource;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
 
-import java.io.File;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Stream;
 
 @Configuration
 public class BatchConfig {
@@ -46,180 +53,648 @@ public class BatchConfig {
     private static final Logger logger = LoggerFactory.getLogger(BatchConfig.class);
 
     private final MongoTemplate mongoTemplate;
-    private final XmlMapper xmlMapper = new XmlMapper();
+    private final MeterRegistry meterRegistry;
 
-    public BatchConfig(MongoTemplate mongoTemplate) {
+    public BatchConfig(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
         this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
     }
 
     @Value("${load-batch.input-dir}")
     private String inputDir;
 
+    // varre subdiretórios de input-dir; include/exclude são globs sobre o caminho relativo (separados por vírgula)
+    @Value("${load-batch.recursive:false}")
+    private boolean recursive;
+
+    // .zip, .tar.gz/.tgz e .xml.gz são lidos direto, sem extrair (ArchiveEntryReader)
+    @Value("${load-batch.include:**.xml,**.xml.gz,**.zip,**.tar.gz,**.tgz}")
+    private String include;
+
+    @Value("${load-batch.exclude:}")
+    private String exclude;
+
+    // descobre os arquivos durante o job em vez de listar tudo antes (só no step multi-thread)
+    @Value("${load-batch.lazy-discovery:false}")
+    private boolean lazyDiscovery;
+
+    // continua observando input-dir depois da varredura (implica lazy-discovery)
+    @Value("${load-batch.watch:false}")
+    private boolean watch;
+
+    @Value("${load-batch.watch-settle-ms:2000}")
+    private long watchSettleMs;
+
+    // 0 = observa até o job ser parado
+    @Value("${load-batch.watch-idle-timeout-ms:0}")
+    private long watchIdleTimeoutMs;
+
+    // várias instâncias sobre o mesmo input-dir, cada arquivo gravado por um nó só (implica lazy-discovery)
+    @Value("${load-batch.distributed:false}")
+    private boolean distributed;
+
+    // igual em todos os nós da mesma importação; um run-id novo importa tudo de novo
+    @Value("${load-batch.run-id:default}")
+    private String runId;
+
+    // vazio = host-pid
+    @Value("${load-batch.node-id:}")
+    private String nodeId;
+
+    // mongo (coleção claim-collection no Mongo de destino) ou file (lock files em claim-dir, disco compartilhado)
+    @Value("${load-batch.claim-store:mongo}")
+    private String claimStore;
+
+    @Value("${load-batch.claim-collection:import_claims}")
+    private String claimCollection;
+
+    @Value("${load-batch.claim-dir:${APP_PATH:.}/claims}")
+    private String claimDir;
+
+    @Value("${load-batch.claim-batch-size:100}")
+    private int claimBatchSize;
+
+    // claim sem heartbeat por mais que isso é assumido por outro nó
+    @Value("${load-batch.claim-lease-ms:60000}")
+    private long claimLeaseMs;
+
+    @Value("${load-batch.claim-heartbeat-ms:15000}")
+    private long claimHeartbeatMs;
+
+    // XMLs a partir deste tamanho são lidos elemento a elemento (split-element), um item por fatura; 0 = desligado
+    @Value("${load-batch.split-min-size:0}")
+    private DataSize splitMinSize;
+
+    @Value("${load-batch.split-element:invoice}")
+    private String splitElement;
+
+    // com partitions > 0, um XML dividido vira faixas deste tamanho, cortadas no início de um elemento
+    @Value("${load-batch.split-range-size:256MB}")
+    private DataSize splitRangeSize;
+
+    // .zip com mais entradas XML que isso é dividido em fatias entre as partições; 0 = não divide
+    @Value("${load-batch.archive-split-entries:10000}")
+    private int archiveSplitEntries;
+
     @Value("${load-batch.threads:4}")
     private int threads;
 
     @Value("${load-batch.chunk-size:200}")
     private int chunkSize;
 
+    // fecha o chunk também por bytes de conteúdo lido (ex.: 64MB); 0 = só por chunk-size
+    @Value("${load-batch.chunk-max-bytes:0}")
+    private DataSize chunkMaxBytes;
+
+    // teto global de bytes lidos e ainda não gravados; o reader espera quando esgota. 0 = sem teto
+    @Value("${load-batch.memory-budget:0}")
+    private DataSize memoryBudget;
+
     @Value("${load-batch.writer-batch-size:1000}")
     private int writerBatchSize;
 
+    @Value("${load-batch.collection:invoices}")
+    private String collection;
+
+    // mongo (bulk writes na coleção) ou file (segmentos bson/jsonl em sink-dir para mongorestore/mongoimport)
+    @Value("${load-batch.sink:mongo}")
+    private String sink;
+
+    @Value("${load-batch.sink-dir:${APP_PATH:.}/export}")
+    private String sinkDir;
+
+    // bson (mongorestore) ou jsonl (mongoimport)
+    @Value("${load-batch.sink-format:bson}")
+    private String sinkFormat;
+
+    @Value("${load-batch.sink-compress:false}")
+    private boolean sinkCompress;
+
+    // tamanho a partir do qual o próximo lote abre um segmento novo
+    @Value("${load-batch.sink-segment-size:1GB}")
+    private DataSize sinkSegmentSize;
+
+    // keep (índices mantidos a cada insert), drop (removidos e recriados no fim) ou staging (carga numa coleção nova, trocada no fim)
+    @Value("${load-batch.index-mode:keep}")
+    private String indexMode;
+
+    // jackson (XmlMapper -> Map -> Document), stax (XML -> BSON direto) ou typed (esquema da fatura com tipos BSON)
+    @Value("${load-batch.converter:jackson}")
+    private String converter;
+
+    // entradas do cache de strings repetidas (nomes, categorias, descrições); 0 = desligado
+    @Value("${load-batch.intern-cache-size:4096}")
+    private int internCacheSize;
+
+    // strings maiores não passam pelo cache
+    @Value("${load-batch.intern-max-length:64}")
+    private int internMaxLength;
+
+    // heap (Files.readAllBytes) ou mapped (mmap acima do limiar, buffers diretos em pool abaixo dele)
+    @Value("${load-batch.read-mode:heap}")
+    private String readMode;
+
+    @Value("${load-batch.mmap-threshold:65536}")
+    private int mmapThreshold;
+
+    @Value("${load-batch.direct-buffer-pool-size:4096}")
+    private int directBufferPoolSize;
+
+    // 0 = step multi-thread com um reader compartilhado; N > 0 = N partições, cada uma com seu reader
+    @Value("${load-batch.partitions:0}")
+    private int partitions;
+
+    // pula arquivos já gravados em execuções anteriores (manifesto persistente no Mongo)
+    @Value("${load-batch.incremental:false}")
+    private boolean incremental;
+
+    @Value("${load-batch.manifest-collection:import_manifest}")
+    private String manifestCollection;
+
     @Value("${load-batch.unacknowledged-writes:false}")
     private boolean unacknowledgedWrites;
 
+    // insert (InsertOneModel) ou upsert (ReplaceOneModel por content_hash, idempotente em reprocessamento)
+    @Value("${load-batch.write-mode:insert}")
+    private String writeMode;
+
+    // tamanho inicial do conjunto de content_hash já vistos no modo upsert (cresce se passar disso)
+    @Value("${load-batch.dedup-expected-files:1000000}")
+    private long dedupExpectedFiles;
+
+    // bulk writes num pool dedicado, com no máximo writer-in-flight pendentes
+    @Value("${load-batch.async-writes:false}")
+    private boolean asyncWrites;
+
+    @Value("${load-batch.writer-threads:4}")
+    private int writerThreads;
+
+    @Value("${load-batch.writer-in-flight:8}")
+    private int writerInFlight;
+
+    // threads virtuais para leitura de arquivos e writes no Mongo; conversão num pool fixo de convert-threads
+    @Value("${load-batch.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    // arquivos lidos antecipadamente (leituras em andamento + prontos esperando conversão)
+    @Value("${load-batch.read-ahead:256}")
+    private int readAhead;
+
+    // 0 = número de cores
+    @Value("${load-batch.convert-threads:0}")
+    private int convertThreads;
+
+    // AIMD sobre writer-batch-size e workers ativos (até threads), guiado por throughput e latência do bulk write
+    @Value("${load-batch.auto-tune:false}")
+    private boolean autoTune;
+
+    @Value("${load-batch.auto-tune-interval-ms:5000}")
+    private long autoTuneIntervalMs;
+
+    @Value("${load-batch.auto-tune-target-write-ms:1000}")
+    private long autoTuneTargetWriteMs;
+
+    @Value("${load-batch.auto-tune-min-writer-batch-size:100}")
+    private int autoTuneMinWriterBatchSize;
+
+    @Value("${load-batch.auto-tune-max-writer-batch-size:20000}")
+    private int autoTuneMaxWriterBatchSize;
+
+    @Value("${load-batch.auto-tune-min-threads:1}")
+    private int autoTuneMinThreads;
+
+    // fração dos arquivos com trace de tempos por arquivo (0..1, amostra pelo hash do nome); 0 = desligado
+    @Value("${load-batch.trace-sample-rate:0}")
+    private double traceSampleRate;
+
+    @Value("${load-batch.trace-dir:${APP_PATH:.}/traces}")
+    private String traceDir;
+
     @Value("${load-batch.failed-dir:${APP_PATH:.}/failed_xml}")
     private String failedDir;
 
     @Value("${load-batch.error-log:${APP_PATH:.}/failed_xml/skip_list.csv}")
     private String errorLogPath;
 
+    // csv (filename,stage,message) ou jsonl
+    @Value("${load-batch.error-log-format:csv}")
+    private String errorLogFormat;
+
+    private Resource[] inputResources;
+    private DirectBufferPool directBufferPool;
+    private ProcessedFileManifest processedFileManifest;
+    private FileClaimStore fileClaimStore;
+    private ClaimingInputSource claimingInputSource;
+    private IndexLifecycleListener indexLifecycleListener;
+    private FileTraceSink fileTraceSink;
+
+    // @Lazy: só lista input-dir se for o reader escolhido no importStep
+    // sincronizado: o MultiResourceItemReader troca de arquivo sem lock e, compartilhado pelas threads do step,
+    // chegava a entregar um arquivo duas vezes e pular o seguinte
     @Bean
-    public MultiResourceItemReader<FilePayload> multiResourceItemReader() throws Exception {
-        File dir = new File(inputDir);
-        if (!dir.exists()) {
-            throw new IllegalStateException("Input dir not found: " + inputDir);
-        }
-        Resource[] resources;
-        try (Stream<Path> paths = Files.list(dir.toPath())) {
-            resources = paths
-                .filter(p -> p.toString().endsWith(".xml"))
-                .map(p -> new FileSystemResource(p.toFile()))
-                .toArray(Resource[]::new);
-        }
+    @Lazy
+    public SynchronizedItemStreamReader<FilePayload> multiResourceItemReader() throws Exception {
+        MultiResourceItemReader<FilePayload> reader = new MultiResourceItemReaderBuilder<FilePayload>()
+            .name("xmlReader")
+            .resources(listInputResources())
+            .delegate(new ArchiveAwareItemReader(newFileReader()))
+            .saveState(false)
+            .build();
+        return new SynchronizedItemStreamReaderBuilder<FilePayload>().delegate(reader).build();
+    }
 
+    // reader de cada partição: estado próprio (restartável), sem lock compartilhado com as outras
+    @Bean
+    @StepScope
+    public MultiResourceItemReader<FilePayload> partitionItemReader(
+            @Value("#{stepExecutionContext['" + FilePartitioner.PARTITION_RESOURCES + "']}") List<String> partitionFiles)
+            throws IOException {
         return new MultiResourceItemReaderBuilder<FilePayload>()
             .name("xmlReader")
-            .resources(resources)
-            .delegate(new WholeFileItemReader())
-            .saveState(false)
+            .resources(filePartitioner().getPartition(partitionFiles))
+            .delegate(new ArchiveAwareItemReader(newFileReader()))
+            .saveState(true)
             .build();
     }
 
     @Bean
-    public ItemProcessor<FilePayload, InvoiceRecord> xmlToJsonProcessor() {
-        return payload -> {
+    public FilePartitioner filePartitioner() {
+        return new FilePartitioner(Path.of(inputDir), () -> {
             try {
-                long t0 = System.nanoTime();
-                Map<?, ?> map = xmlMapper.readValue(payload.getContent(), Map.class);
-                long ms = (System.nanoTime() - t0) / 1_000_000;
-                InvoiceRecord record = new InvoiceRecord(payload.getFilename(), (Map<String, Object>) map);
-                record.setProcessMs(ms);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Processed {} in {}ms", payload.getFilename(), ms);
-                }
-                return record;
-            } catch (Exception e) {
-                logger.error("Error converting XML for file {}", payload.getFilename(), e);
-                throw e;
+                return listInputResources();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        };
+        });
     }
 
-    // writer privado (não @Bean) — recebe o metricsListener para registrar tempos de insert
-    private ItemWriter<InvoiceRecord> buildJsonWriter(BatchMetricsListener metricsListener) {
-        return items -> {
-            File failDir = new File(failedDir);
-            failDir.mkdirs();
-
-            MongoCollection<Document> collection = mongoTemplate.getCollection("invoices");
-            if (unacknowledgedWrites) {
-                collection = collection.withWriteConcern(WriteConcern.UNACKNOWLEDGED);
+    // listado uma vez só, compartilhado entre o reader multi-thread e o particionador
+    private synchronized Resource[] listInputResources() throws IOException {
+        if (inputResources != null) {
+            return inputResources;
+        }
+        List<Resource> found = new ArrayList<>();
+        try (DirectoryWalkSource source = directoryWalkSource(false)) {
+            source.open();
+            for (Resource resource = source.next(); resource != null; resource = source.next()) {
+                // o reader compartilhado lê em sequência de qualquer jeito; dividir só ajuda o particionador
+                if (ArchiveEntryReader.isArchive(resource)) {
+                    found.addAll(partitions > 0 ? ArchiveEntryReader.split(resource, archiveSplitEntries) : List.of(resource));
+                } else {
+                    found.addAll(XmlFragmentReader.split(resource, splitMinSize.toBytes(), splitElement,
+                        partitions > 0 ? splitRangeSize.toBytes() : 0));
+                }
             }
+        }
+        found.sort(Comparator.comparing(Resource::getFilename));
+        inputResources = found.toArray(Resource[]::new);
+        return inputResources;
+    }
 
-            List<WriteModel<Document>> writes = new ArrayList<>(Math.min(items.size(), writerBatchSize));
-            BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+    private synchronized WholeFileItemReader newFileReader() {
+        if (!"mapped".equalsIgnoreCase(readMode)) {
+            return new WholeFileItemReader();
+        }
+        if (directBufferPool == null) {
+            directBufferPool = new DirectBufferPool(mmapThreshold, directBufferPoolSize);
+        }
+        return new WholeFileItemReader(directBufferPool);
+    }
 
-            for (InvoiceRecord record : items) {
-                Document doc = new Document(record.getData());
-                doc.put("source_file", record.getFilename());
-                writes.add(new InsertOneModel<>(doc));
+    // arquivos entregues conforme a varredura avança (lazy-discovery / watch)
+    @Bean
+    @Lazy
+    public DiscoveringItemReader discoveringItemReader() {
+        InputFileSource source = distributed ? claimingInputSource() : directoryWalkSource(watch);
+        return new DiscoveringItemReader(source.splitting(splitMinSize.toBytes(), splitElement), newFileReader());
+    }
 
-                if (writes.size() >= writerBatchSize) {
-                    flushBulkWrites(collection, writes, options, metricsListener);
+    // modo virtual-threads: leitura antecipada com uma thread virtual por arquivo
+    @Bean
+    @Lazy
+    public PrefetchingItemReader prefetchingItemReader() throws Exception {
+        InputFileSource source = distributed ? claimingInputSource()
+            : lazyDiscovery || watch ? directoryWalkSource(watch)
+            : InputFileSource.of(listInputResources());
+        return new PrefetchingItemReader(source.splitting(splitMinSize.toBytes(), splitElement), newFileReader(), readAhead);
+    }
+
+    private DirectoryWalkSource directoryWalkSource(boolean watchAfterWalk) {
+        return new DirectoryWalkSource(Path.of(inputDir), recursive, include, exclude, processedFileManifest(),
+            watchAfterWalk, watchSettleMs, watchIdleTimeoutMs);
+    }
+
+    // uma instância só: é fonte dos dois readers e listener do step (libera os claims no fim)
+    private synchronized ClaimingInputSource claimingInputSource() {
+        if (claimingInputSource == null) {
+            claimingInputSource = new ClaimingInputSource(directoryWalkSource(watch), fileClaimStore(), Path.of(inputDir),
+                claimBatchSize, claimHeartbeatMs, claimLeaseMs);
+        }
+        return claimingInputSource;
+    }
+
+    // null fora do modo distribuído
+    private synchronized FileClaimStore fileClaimStore() {
+        if (!distributed) {
+            return null;
+        }
+        if (fileClaimStore == null) {
+            String owner = nodeId.isBlank() ? defaultNodeId() : nodeId;
+            if ("file".equalsIgnoreCase(claimStore)) {
+                try {
+                    fileClaimStore = new LockFileClaimStore(Path.of(claimDir), runId, owner, claimLeaseMs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to create claim dir " + claimDir, e);
                 }
+            } else {
+                fileClaimStore = new MongoFileClaimStore(mongoTemplate.getCollection(claimCollection), runId, owner, claimLeaseMs);
             }
-
-            if (!writes.isEmpty()) {
-                flushBulkWrites(collection, writes, options, metricsListener);
+            if (claimHeartbeatMs * 2 > claimLeaseMs) {
+                logger.warn("claim-heartbeat-ms {} is more than half of claim-lease-ms {}: live claims may be taken over",
+                    claimHeartbeatMs, claimLeaseMs);
+            }
+            if (!"upsert".equalsIgnoreCase(writeMode)) {
+                logger.warn("Distributed mode with write-mode insert: a file taken over from a dead node may be inserted twice");
             }
-        };
+        }
+        return fileClaimStore;
     }
 
-    private void flushBulkWrites(
-        MongoCollection<Document> collection,
-        List<WriteModel<Document>> writes,
-        BulkWriteOptions options,
-        BatchMetricsListener metricsListener
-    ) {
-        long batchStart = System.nanoTime();
+    private static String defaultNodeId() {
+        String host;
         try {
-            collection.bulkWrite(writes, options);
-            long batchMs = (System.nanoTime() - batchStart) / 1_000_000;
-            metricsListener.recordWriteTime(batchMs);
-            if (logger.isDebugEnabled()) {
-                logger.debug("Inserted chunk size {} in {}ms", writes.size(), batchMs);
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "node";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    @Bean
+    public ItemProcessor<FilePayload, InvoiceRecord> xmlToJsonProcessor() {
+        boolean upsert = "upsert".equalsIgnoreCase(writeMode);
+        logger.info("XML converter: {}, write mode: {}", converter, upsert ? "upsert" : "insert");
+        ContentHashSet seenContent = upsert ? new ContentHashSet(dedupExpectedFiles) : null;
+        StringInterner interner = null;
+        if (internCacheSize > 0) {
+            interner = new StringInterner(internCacheSize, internMaxLength);
+            interner.bindTo(meterRegistry);
+        }
+        InvoiceProcessor processor = new InvoiceProcessor(converter, upsert, seenContent, interner);
+        if (virtualThreads) {
+            return new OffloadingItemProcessor<>(processor, convertExecutor());
+        }
+        return processor;
+    }
+
+    // writer privado (não @Bean) — recebe o metricsListener para registrar tempos de insert
+    private InvoiceWriter buildJsonWriter(BatchMetricsListener metricsListener, BatchErrorHandler errorHandler) {
+        InvoiceWriter writer = new InvoiceWriter(invoiceSink(metricsListener), writerBatchSize, inputDir, failedDir,
+            metricsListener, errorHandler);
+        writer.setManifest(processedFileManifest());
+        writer.setClaims(fileClaimStore());
+        writer.setTraceSink(fileTraceSink());
+        if (asyncWrites && virtualThreads) {
+            writer.enablePipelining(virtualExecutor("invoice-writer-", 0), writerInFlight);
+        } else if (asyncWrites) {
+            writer.enablePipelining(writerThreads, writerInFlight);
+        }
+        return writer;
+    }
+
+    private InvoiceSink invoiceSink(BatchMetricsListener metricsListener) {
+        boolean upsert = "upsert".equalsIgnoreCase(writeMode);
+        if ("file".equalsIgnoreCase(sink)) {
+            if (upsert) {
+                logger.warn("write-mode upsert does not apply to the file sink; import with mongoimport --mode=upsert --upsertFields=content_hash");
             }
-            writes.clear();
-        } catch (Exception batchEx) {
-            logger.warn("Bulk insert failed for {} items, fallback item-by-item", writes.size(), batchEx);
-            for (WriteModel<Document> write : writes) {
-                InsertOneModel<Document> insert = (InsertOneModel<Document>) write;
-                String filename = String.valueOf(insert.getDocument().get("source_file"));
-                try {
-                    long t0 = System.nanoTime();
-                    collection.insertOne(insert.getDocument());
-                    long ms = (System.nanoTime() - t0) / 1_000_000;
-                    metricsListener.recordWriteTime(ms);
-                } catch (Exception e) {
-                    logger.error("Failed to write invoice {}", filename, e);
-                    try {
-                        File src = new File(inputDir, filename);
-                        File dest = new File(failedDir, filename);
-                        if (src.exists()) {
-                            Files.move(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                            logger.warn("Moved failed file {} to {}", filename, failedDir);
-                        }
-                    } catch (Exception moveEx) {
-                        logger.error("Failed to move file {} to failed dir", filename, moveEx);
-                    }
-                }
+            return new FileInvoiceSink(Path.of(sinkDir), collection, sinkFormat, sinkCompress, sinkSegmentSize.toBytes(),
+                metricsListener);
+        }
+        IndexLifecycleListener indexes = indexLifecycleListener();
+        String target = indexes != null ? indexes.loadCollection() : collection;
+        // manifesto e claims marcam o arquivo como gravado: sem confirmação do servidor, um write perdido nunca é refeito
+        boolean unacknowledged = unacknowledgedWrites;
+        if (unacknowledged && (incremental || distributed)) {
+            logger.warn("unacknowledged-writes is ignored in {} mode: files are only marked as done after the server confirms the write",
+                incremental ? "incremental" : "distributed");
+            unacknowledged = false;
+        }
+        return new MongoInvoiceSink(mongoTemplate, target, unacknowledged, upsert, metricsListener);
+    }
+
+    // null com trace-sample-rate 0
+    private synchronized FileTraceSink fileTraceSink() {
+        if (traceSampleRate <= 0) {
+            return null;
+        }
+        if (fileTraceSink == null) {
+            logger.info("Tracing {}% of files to {}", traceSampleRate * 100, traceDir);
+            fileTraceSink = new FileTraceSink(Path.of(traceDir), traceSampleRate);
+        }
+        return fileTraceSink;
+    }
+
+    // null com index-mode keep
+    private synchronized IndexLifecycleListener indexLifecycleListener() {
+        if ("keep".equalsIgnoreCase(indexMode)) {
+            return null;
+        }
+        if (indexLifecycleListener == null) {
+            boolean staging = "staging".equalsIgnoreCase(indexMode);
+            if ("file".equalsIgnoreCase(sink)) {
+                logger.warn("index-mode {} is ignored with the file sink: nothing is written to {}", indexMode, collection);
+                return null;
             }
-            writes.clear();
+            if (distributed) {
+                logger.warn("index-mode {} is ignored in distributed mode: every node would drop and rebuild the indexes", indexMode);
+                return null;
+            }
+            if (staging && incremental) {
+                logger.warn("index-mode staging replaces the whole collection and would drop files skipped by incremental; using drop");
+                staging = false;
+            }
+            indexLifecycleListener = new IndexLifecycleListener(mongoTemplate.getDb(), collection, staging);
         }
+        return indexLifecycleListener;
+    }
+
+    // null quando load-batch.incremental está desligado
+    private synchronized ProcessedFileManifest processedFileManifest() {
+        if (!incremental) {
+            return null;
+        }
+        if (processedFileManifest == null) {
+            processedFileManifest = new ProcessedFileManifest(mongoTemplate.getCollection(manifestCollection));
+        }
+        return processedFileManifest;
     }
 
     @Bean
     public Step importStep(JobRepository jobRepository, PlatformTransactionManager transactionManager) throws Exception {
-        BatchMetricsListener metricsListener = new BatchMetricsListener();
-        BatchErrorHandler errorHandler = new BatchErrorHandler(errorLogPath);
-        ItemWriter<InvoiceRecord> writer = buildJsonWriter(metricsListener);
-        return new StepBuilder("importStep", jobRepository)
-            .<FilePayload, InvoiceRecord>chunk(chunkSize, transactionManager)
-            .reader(multiResourceItemReader())
+        BatchMetricsListener metricsListener = new BatchMetricsListener(meterRegistry);
+        BatchErrorHandler errorHandler = new BatchErrorHandler(errorLogPath, errorLogFormat);
+        InvoiceWriter writer = buildJsonWriter(metricsListener, errorHandler);
+        AdaptiveTuner tuner = autoTune ? adaptiveTuner(metricsListener) : null;
+        if (tuner != null) {
+            writer.setBatchSizeSupplier(tuner::writerBatchSize);
+        }
+        ByteBudgetCompletionPolicy byteLimit = byteBudgetCompletionPolicy(writer);
+
+        if (partitions > 0 && distributed) {
+            logger.warn("partitions are ignored in distributed mode: files are handed out by claims, not by partition");
+        } else if (partitions > 0) {
+            if (lazyDiscovery || watch) {
+                logger.warn("lazy-discovery/watch are ignored with partitions > 0: partitioning needs the full file list");
+            }
+            Step worker = chunkStep("importWorkerStep", partitionItemReader(null), writer, byteLimit,
+                    metricsListener, errorHandler, jobRepository, transactionManager)
+                .build();
+            StepBuilder manager = new StepBuilder("importStep", jobRepository);
+            if (tuner != null) {
+                manager.listener(tuner);
+            }
+            if (byteLimit != null) {
+                manager.listener((StepExecutionListener) byteLimit);
+            }
+            if (fileTraceSink() != null) {
+                manager.listener((StepExecutionListener) fileTraceSink());
+            }
+            return manager
+                .partitioner("importWorkerStep", filePartitioner())
+                .step(worker)
+                .gridSize(partitions)
+                .taskExecutor(partitionTaskExecutor())
+                // afterStep roda na ordem inversa: o error log fecha depois do writer drenar os bulk writes
+                .listener((StepExecutionListener) errorHandler)
+                .listener((StepExecutionListener) metricsListener)
+                .listener((StepExecutionListener) writer)
+                .build();
+        }
+
+        ItemReader<FilePayload> reader = virtualThreads ? prefetchingItemReader()
+            : lazyDiscovery || watch || distributed ? discoveringItemReader()
+            : multiResourceItemReader();
+        FaultTolerantStepBuilder<FilePayload, InvoiceRecord> step = chunkStep("importStep", reader, writer, byteLimit,
+                metricsListener, errorHandler, jobRepository, transactionManager);
+        if (tuner != null) {
+            step.listener(tuner);
+        }
+        if (byteLimit != null) {
+            step.listener((StepExecutionListener) byteLimit);
+        }
+        if (fileTraceSink() != null) {
+            // afterStep depois do writer drenar: os bulk writes assíncronos ainda emitem linhas
+            step.listener((StepExecutionListener) fileTraceSink());
+        }
+        if (distributed) {
+            // afterStep depois do writer drenar: o que ficou aberto vira done (ou expira, se o step falhou)
+            step.listener((StepExecutionListener) claimingInputSource());
+        }
+        step.listener((StepExecutionListener) errorHandler)
+            .listener((StepExecutionListener) metricsListener)
+            .listener((StepExecutionListener) writer)
+            .taskExecutor(tuner != null ? tuner.gate(taskExecutor()) : taskExecutor());
+        if (tuner != null || virtualThreads) {
+            // o padrão do Spring Batch é 4 chunks simultâneos; o tuner precisa poder chegar a threads workers e,
+            // com virtual threads, o concurrencyLimit do executor já é o limite
+            throttleLimit(step, threads);
+        }
+        return step.build();
+    }
+
+    @SuppressWarnings("removal")
+    private static void throttleLimit(FaultTolerantStepBuilder<FilePayload, InvoiceRecord> step, int limit) {
+        step.throttleLimit(limit);
+    }
+
+    // null quando o chunk é só por quantidade e não há orçamento de memória
+    private ByteBudgetCompletionPolicy byteBudgetCompletionPolicy(InvoiceWriter writer) {
+        if (chunkMaxBytes.toBytes() <= 0 && memoryBudget.toBytes() <= 0) {
+            return null;
+        }
+        ByteBudget budget = null;
+        if (memoryBudget.toBytes() > 0) {
+            budget = new ByteBudget(memoryBudget.toBytes(), meterRegistry);
+            writer.setByteBudget(budget);
+            if (virtualThreads) {
+                logger.warn("memory-budget does not cover the read-ahead window: up to {} files are read before the budget applies", readAhead);
+            }
+        }
+        logger.info("Byte-based chunking: chunk-max-bytes={} memory-budget={}", chunkMaxBytes, memoryBudget);
+        return new ByteBudgetCompletionPolicy(chunkSize, chunkMaxBytes.toBytes(), budget);
+    }
+
+    // no modo particionado o número de partições simultâneas é fixo; só o batch size varia
+    private AdaptiveTuner adaptiveTuner(BatchMetricsListener metricsListener) {
+        int maxBatch = Math.min(autoTuneMaxWriterBatchSize, chunkSize);
+        int minWorkers = partitions > 0 ? threads : autoTuneMinThreads;
+        return new AdaptiveTuner(metricsListener, meterRegistry, autoTuneIntervalMs, autoTuneTargetWriteMs,
+            writerBatchSize, autoTuneMinWriterBatchSize, maxBatch, minWorkers, threads);
+    }
+
+    private FaultTolerantStepBuilder<FilePayload, InvoiceRecord> chunkStep(
+        String name,
+        ItemReader<FilePayload> reader,
+        ItemWriter<InvoiceRecord> writer,
+        ByteBudgetCompletionPolicy byteLimit,
+        BatchMetricsListener metricsListener,
+        BatchErrorHandler errorHandler,
+        JobRepository jobRepository,
+        PlatformTransactionManager transactionManager
+    ) {
+        StepBuilder builder = new StepBuilder(name, jobRepository);
+        SimpleStepBuilder<FilePayload, InvoiceRecord> chunks = byteLimit == null
+            ? builder.<FilePayload, InvoiceRecord>chunk(chunkSize, transactionManager)
+            : builder.<FilePayload, InvoiceRecord>chunk(byteLimit, transactionManager)
+                .listener((ItemReadListener<FilePayload>) byteLimit)
+                .listener((ChunkListener) byteLimit);
+        FileTraceSink trace = fileTraceSink();
+        if (trace != null) {
+            chunks.listener((ItemReadListener<FilePayload>) trace)
+                .listener((ItemProcessListener<FilePayload, InvoiceRecord>) trace)
+                .listener((ChunkListener) trace);
+        }
+        return chunks
+            .reader(reader)
             .processor(xmlToJsonProcessor())
             .writer(writer)
-            .listener((StepExecutionListener) metricsListener)
+            .listener((ItemReadListener<FilePayload>) metricsListener)
             .listener((ItemProcessListener<FilePayload, InvoiceRecord>) metricsListener)
             .listener((ItemWriteListener<InvoiceRecord>) metricsListener)
             .listener((ItemProcessListener<FilePayload, InvoiceRecord>) errorHandler)
             .listener((ItemWriteListener<InvoiceRecord>) errorHandler)
             .faultTolerant()
+            .listener((SkipListener<FilePayload, InvoiceRecord>) metricsListener)
+            // saída do processor fica em cache no rescan do chunk: o payload pode já ter sido liberado
+            .processorNonTransactional()
             .skip(Exception.class)
-            .skipLimit(100)
-            .taskExecutor(taskExecutor())
-            .build();
+            // sem conexão com o Mongo o rescan item a item só esperaria o timeout de novo para cada fatura
+            .noSkip(MongoSocketException.class)
+            .noSkip(MongoTimeoutException.class)
+            .skipLimit(100);
     }
 
     @Bean
     public Job importJob(JobRepository jobRepository, Step importStep, BatchSummaryListener batchSummaryListener) {
-        return new JobBuilder("importJob", jobRepository)
+        JobBuilder job = new JobBuilder("importJob", jobRepository);
+        job.listener(batchSummaryListener);
+        IndexLifecycleListener indexes = indexLifecycleListener();
+        if (indexes != null) {
+            indexes.setJobRepository(jobRepository);
+            // afterJob roda na ordem inversa: os índices são recriados antes do summary gravar o tempo
+            job.listener(indexes);
+        }
+        return job
             .start(importStep)
-            .listener(batchSummaryListener)
             .build();
     }
 
     @Bean
     public TaskExecutor taskExecutor() {
+        if (virtualThreads) {
+            return virtualExecutor("batch-", threads);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(threads);
         executor.setMaxPoolSize(threads);
@@ -230,4 +705,43 @@ public class BatchConfig {
         executor.initialize();
         return executor;
     }
+
+    // uma thread por partição ativa; a fila é ilimitada porque todas as partições são submetidas de uma vez
+    @Bean
+    public TaskExecutor partitionTaskExecutor() {
+        if (virtualThreads) {
+            return virtualExecutor("partition-", threads);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("partition-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // conversão XML no modo virtual-threads: threads de plataforma, uma por core, fora dos carriers
+    @Bean
+    public ThreadPoolTaskExecutor convertExecutor() {
+        int size = convertThreads > 0 ? convertThreads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setThreadNamePrefix("convert-");
+        executor.setDaemon(true);
+        executor.initialize();
+        return executor;
+    }
+
+    // limite explícito de concorrência (semáforo do SimpleAsyncTaskExecutor) em vez de tamanho de pool; 0 = sem limite
+    private static SimpleAsyncTaskExecutor virtualExecutor(String prefix, int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix);
+        executor.setVirtualThreads(true);
+        if (concurrencyLimit > 0) {
+            executor.setConcurrencyLimit(concurrencyLimit);
+        }
+        return executor;
+    }
 }
@@ -2,20 +2,52 @@ package com.example.loadbatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.ItemProcessListener;
 import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.item.Chunk;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
-public class BatchErrorHandler implements ItemProcessListener<FilePayload, InvoiceRecord>, ItemWriteListener<InvoiceRecord> {
+/**
+ * Grava a skip list ({@code error-log}) de forma assíncrona: as threads do step só formatam a linha e a colocam
+ * numa fila lock-free; uma única thread escreve no arquivo com buffer e faz flush a cada {@value #FLUSH_LINES}
+ * linhas ou {@value #FLUSH_INTERVAL_MS} ms. Uma rajada de falhas não abre/fecha o arquivo por item nem
+ * intercala linhas.
+ * <p>
+ * Formato {@code csv} (filename,stage,message com aspas RFC 4180) ou {@code jsonl}. A thread só é criada na
+ * primeira falha e é encerrada no afterStep (ou no shutdown da JVM), depois de gravar o que estiver na fila.
+ */
+public class BatchErrorHandler implements ItemProcessListener<FilePayload, InvoiceRecord>, ItemWriteListener<InvoiceRecord>,
+        StepExecutionListener {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchErrorHandler.class);
-    private final String errorLogPath;
+    private static final int FLUSH_LINES = 512;
+    private static final long FLUSH_INTERVAL_MS = 200;
 
-    public BatchErrorHandler(String errorLogPath) {
-        this.errorLogPath = errorLogPath;
+    private final Path errorLogPath;
+    private final boolean jsonLines;
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile Thread drainThread;
+    private Thread shutdownHook;
+    private volatile boolean running;
+
+    public BatchErrorHandler(String errorLogPath, String format) {
+        this.errorLogPath = Path.of(errorLogPath);
+        this.jsonLines = "jsonl".equalsIgnoreCase(format);
     }
 
     @Override
@@ -30,11 +62,186 @@ public class BatchErrorHandler implements ItemProcessListener<FilePayload, Invoi
         }
     }
 
+    // falha de um documento fora do ciclo do chunk (recuperação do bulk write / writes assíncronos)
+    public void onDocumentWriteError(String filename, String message) {
+        logError(filename, "WRITE", message);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        close();
+        return null;
+    }
+
     private void logError(String filename, String stage, String message) {
-        try (FileWriter fw = new FileWriter(errorLogPath, true)) {
-            fw.write(filename + "," + stage + "," + message.replace(',', ';') + "\n");
+        String line = jsonLines ? jsonLine(filename, stage, message) : csvLine(filename, stage, message);
+        if (!running) {
+            start();
+        }
+        queue.offer(line);
+        // rajada: acorda a thread antes do intervalo para a fila não crescer sem limite
+        if (queued.incrementAndGet() % FLUSH_LINES == 0) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        drainThread = new Thread(this::drainLoop, "error-log-writer");
+        drainThread.setDaemon(true);
+        drainThread.start();
+        shutdownHook = new Thread(this::close, "error-log-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /** Grava o que estiver na fila e encerra a thread; uma falha posterior abre o arquivo de novo. */
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while flushing error log {}", errorLogPath);
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM já está encerrando
+            }
+        }
+    }
+
+    private void drainLoop() {
+        Writer writer = null;
+        long dropped = 0;
+        int unflushed = 0;
+        long lastFlush = System.nanoTime();
+        while (true) {
+            // lido antes de esvaziar a fila: o que for enfileirado antes do close() ainda é gravado
+            boolean stopping = !running;
+            String line;
+            while ((line = queue.poll()) != null) {
+                try {
+                    if (writer == null) {
+                        writer = open();
+                    }
+                    writer.write(line);
+                    unflushed++;
+                } catch (IOException e) {
+                    if (dropped++ == 0) {
+                        logger.error("Failed to write error log {}", errorLogPath, e);
+                    }
+                }
+                if (unflushed >= FLUSH_LINES) {
+                    unflushed = flush(writer, unflushed);
+                    lastFlush = System.nanoTime();
+                }
+            }
+            if (unflushed > 0 && (stopping || System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS))) {
+                unflushed = flush(writer, unflushed);
+                lastFlush = System.nanoTime();
+            }
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.error("Failed to close error log {}", errorLogPath, e);
+            }
+        }
+        if (dropped > 0) {
+            logger.error("{} error log lines could not be written to {}", dropped, errorLogPath);
+        }
+    }
+
+    private Writer open() throws IOException {
+        Path parent = errorLogPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return Files.newBufferedWriter(errorLogPath, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    private int flush(Writer writer, int unflushed) {
+        try {
+            writer.flush();
+            return 0;
         } catch (IOException e) {
-            logger.error("Failed to write error log", e);
+            logger.error("Failed to flush error log {}", errorLogPath, e);
+            return unflushed;
+        }
+    }
+
+    private static String csvLine(String filename, String stage, String message) {
+        StringBuilder line = new StringBuilder(128);
+        csvField(line, filename).append(',');
+        csvField(line, stage).append(',');
+        return csvField(line, message).append('\n').toString();
+    }
+
+    private static StringBuilder csvField(StringBuilder line, String value) {
+        String text = String.valueOf(value);
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(text);
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static String jsonLine(String filename, String stage, String message) {
+        StringBuilder line = new StringBuilder(128).append("{\"filename\":");
+        jsonString(line, filename).append(",\"stage\":");
+        jsonString(line, stage).append(",\"message\":");
+        return jsonString(line, message).append("}\n").toString();
+    }
+
+    private static StringBuilder jsonString(StringBuilder line, String value) {
+        if (value == null) {
+            return line.append("null");
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
         }
+        return line.append('"');
     }
 }
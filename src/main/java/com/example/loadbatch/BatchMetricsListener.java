@@ -1,92 +1,162 @@
 package com.example.loadbatch;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
 import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.item.Chunk;
 
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 
-public class BatchMetricsListener implements StepExecutionListener, ItemProcessListener<FilePayload, InvoiceRecord>, ItemWriteListener<InvoiceRecord> {
+/**
+ * Métricas do step em Micrometer, com resolução de nanossegundos: timers de leitura ({@code load.batch.read}),
+ * conversão XML ({@code load.batch.convert}) e bulk write ({@code load.batch.write}), contadores de arquivos e
+ * bytes lidos, gauges de itens em andamento e de arquivos/bytes por segundo. Com o endpoint do actuator ligado
+ * aparecem em {@code /actuator/prometheus} durante a execução; o afterStep loga p50/p95/p99/p999.
+ */
+public class BatchMetricsListener implements StepExecutionListener, ItemReadListener<FilePayload>,
+        ItemProcessListener<FilePayload, InvoiceRecord>, ItemWriteListener<InvoiceRecord>, SkipListener<FilePayload, InvoiceRecord> {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchMetricsListener.class);
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99, 0.999};
 
     // contadores simples (thread-safe)
     private final LongAdder processed = new LongAdder();
     private final LongAdder written   = new LongAdder();
     private final LongAdder failed    = new LongAdder();
 
-    // métricas XML→JSON (thread-safe)
-    private final LongAdder  processTotalMs = new LongAdder();
-    private final LongAdder  processCount   = new LongAdder();
-    private final AtomicLong processMinMs   = new AtomicLong(Long.MAX_VALUE);
-    private final AtomicLong processMaxMs   = new AtomicLong(0);
-
-    // métricas insert MongoDB (thread-safe)
-    private final LongAdder  writeTotalMs   = new LongAdder();
-    private final LongAdder  writeCount     = new LongAdder();
-    private final AtomicLong writeMinMs     = new AtomicLong(Long.MAX_VALUE);
-    private final AtomicLong writeMaxMs     = new AtomicLong(0);
+    private final Timer readTimer;
+    private final Timer processTimer;
+    private final Timer writeTimer;
+    private final Counter filesRead;
+    private final Counter bytesRead;
+
+    // lidos e ainda não gravados (nem filtrados/descartados)
+    private final AtomicLong inFlight = new AtomicLong();
+    private final ThreadLocal<long[]> readStart = ThreadLocal.withInitial(() -> new long[1]);
+    private volatile long startNanos;
+
+    public BatchMetricsListener(MeterRegistry registry) {
+        this.readTimer = timer(registry, "load.batch.read", "Time to read one input file");
+        this.processTimer = timer(registry, "load.batch.convert", "Time to convert one XML file");
+        this.writeTimer = timer(registry, "load.batch.write", "Time of one Mongo bulk write round-trip");
+        this.filesRead = Counter.builder("load.batch.files").description("Files read").register(registry);
+        this.bytesRead = Counter.builder("load.batch.bytes").baseUnit("bytes").description("Bytes read").register(registry);
+        Gauge.builder("load.batch.in.flight", inFlight, AtomicLong::get)
+            .description("Items read and not yet written").register(registry);
+        // média desde o início do step; a taxa instantânea sai de rate() sobre os contadores
+        Gauge.builder("load.batch.files.rate", this, l -> l.perSecond(l.filesRead.count()))
+            .description("Files read per second since step start").register(registry);
+        Gauge.builder("load.batch.bytes.rate", this, l -> l.perSecond(l.bytesRead.count()))
+            .baseUnit("bytes").description("Bytes read per second since step start").register(registry);
+    }
 
-    // ── helpers CAS para min/max ─────────────────────────────────────────────
-    private static void updateMin(AtomicLong ref, long val) {
-        long cur;
-        do { cur = ref.get(); } while (val < cur && !ref.compareAndSet(cur, val));
+    // quantis acumulados desde o início do job (sem janela deslizante) para o resumo final refletir a execução inteira
+    private static Timer timer(MeterRegistry registry, String name, String description) {
+        return Timer.builder(name)
+            .description(description)
+            .publishPercentiles(PERCENTILES)
+            .publishPercentileHistogram()
+            .distributionStatisticExpiry(Duration.ofDays(1))
+            .distributionStatisticBufferLength(1)
+            .register(registry);
     }
 
-    private static void updateMax(AtomicLong ref, long val) {
-        long cur;
-        do { cur = ref.get(); } while (val > cur && !ref.compareAndSet(cur, val));
+    private double perSecond(double count) {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed > 0 ? count * 1e9 / elapsed : 0;
     }
 
     // ── StepExecutionListener ────────────────────────────────────────────────
     @Override
     public void beforeStep(StepExecution stepExecution) {
+        // no modo particionado o step gerente começa antes dos workers
+        if (startNanos == 0) {
+            startNanos = System.nanoTime();
+        }
         logger.info("Starting step {}", stepExecution.getStepName());
     }
 
     @Override
     public ExitStatus afterStep(StepExecution stepExecution) {
-        long xmlQuantity = processCount.sum();
-        long ingestQuantity = writeCount.sum();
-
-        long xmlAvg = xmlQuantity > 0 ? processTotalMs.sum() / xmlQuantity : 0;
-        long xmlMin = xmlQuantity > 0 ? processMinMs.get() : 0;
-        long xmlMax = processMaxMs.get();
-
-        long ingestAvg = ingestQuantity > 0 ? writeTotalMs.sum() / ingestQuantity : 0;
-        long ingestMin = ingestQuantity > 0 ? writeMinMs.get() : 0;
-        long ingestMax = writeMaxMs.get();
-
         logger.info("Step completed. processed={} written={} failed={}",
                 processed.sum(), written.sum(), failed.sum());
-        logger.info("XML conversion metrics: quantity={} min={}ms avg={}ms max={}ms",
-                xmlQuantity, xmlMin, xmlAvg, xmlMax);
-        logger.info("Ingestion metrics: quantity={} min={}ms avg={}ms max={}ms",
-                ingestQuantity, ingestMin, ingestAvg, ingestMax);
+        logger.info(String.format(Locale.ROOT, "Throughput: files=%.0f bytes=%.0f files/s=%.1f MB/s=%.2f",
+                filesRead.count(), bytesRead.count(), perSecond(filesRead.count()), perSecond(bytesRead.count()) / 1e6));
+        logger.info(summary("Read", readTimer));
+        logger.info(summary("XML conversion", processTimer));
+        logger.info(summary("Ingestion", writeTimer));
 
         return stepExecution.getExitStatus();
     }
 
+    private static String summary(String label, Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        StringBuilder line = new StringBuilder(label).append(" metrics: quantity=").append(snapshot.count());
+        line.append(String.format(Locale.ROOT, " mean=%.3fms", snapshot.mean(TimeUnit.MILLISECONDS)));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            line.append(String.format(Locale.ROOT, " p%s=%.3fms",
+                percentileLabel(percentile.percentile()), percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        line.append(String.format(Locale.ROOT, " max=%.3fms", snapshot.max(TimeUnit.MILLISECONDS)));
+        return line.toString();
+    }
+
+    // 0.5 -> 50, 0.999 -> 999
+    private static String percentileLabel(double percentile) {
+        String digits = String.format(Locale.ROOT, "%.3f", percentile).substring(2).replaceAll("0+$", "");
+        return digits.length() == 1 ? digits + "0" : digits;
+    }
+
+    // ── ItemReadListener ─────────────────────────────────────────────────────
+    @Override
+    public void beforeRead() {
+        readStart.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterRead(FilePayload item) {
+        readTimer.record(System.nanoTime() - readStart.get()[0], TimeUnit.NANOSECONDS);
+        filesRead.increment();
+        bytesRead.increment(item.getSize());
+        inFlight.incrementAndGet();
+    }
+
     // ── ItemProcessListener ──────────────────────────────────────────────────
     @Override
     public void afterProcess(FilePayload item, InvoiceRecord result) {
+        if (result == null) {
+            // conteúdo repetido filtrado pelo processor
+            inFlight.decrementAndGet();
+            return;
+        }
         processed.increment();
-        long ms = result.getProcessMs();
-        processTotalMs.add(ms);
-        processCount.increment();
-        updateMin(processMinMs, ms);
-        updateMax(processMaxMs, ms);
+        processTimer.record(result.getProcessNanos(), TimeUnit.NANOSECONDS);
     }
 
     @Override
     public void onProcessError(FilePayload item, Exception e) {
         failed.increment();
+        inFlight.decrementAndGet();
         logger.error("Process error for file {}", item.getFilename(), e);
     }
 
@@ -94,19 +164,42 @@ public class BatchMetricsListener implements StepExecutionListener, ItemProcessL
     @Override
     public void afterWrite(Chunk<? extends InvoiceRecord> items) {
         written.add(items.size());
+        inFlight.addAndGet(-items.size());
     }
 
+    // failed e inFlight não mudam aqui: o chunk com erro é regravado item a item e cada um termina em afterWrite
+    // ou onSkipInWrite
     @Override
     public void onWriteError(Exception exception, Chunk<? extends InvoiceRecord> items) {
-        failed.add(items.size());
         logger.error("Write error for batch of size {}", items.size(), exception);
     }
 
+    // ── SkipListener ─────────────────────────────────────────────────────────
+    @Override
+    public void onSkipInWrite(InvoiceRecord item, Throwable t) {
+        failed.increment();
+        inFlight.decrementAndGet();
+    }
+
     // ── chamado diretamente pelo jsonWriter ──────────────────────────────────
-    public void recordWriteTime(long ms) {
-        writeTotalMs.add(ms);
-        writeCount.increment();
-        updateMin(writeMinMs, ms);
-        updateMax(writeMaxMs, ms);
+    public void recordWriteTime(long nanos) {
+        writeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordWriteFailure() {
+        failed.increment();
+    }
+
+    // ── lidos pelo AdaptiveTuner ─────────────────────────────────────────────
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    public long writeCount() {
+        return writeTimer.count();
+    }
+
+    public double writeTotalNanos() {
+        return writeTimer.totalTime(TimeUnit.NANOSECONDS);
     }
 }
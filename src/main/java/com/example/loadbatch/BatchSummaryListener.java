@@ -16,6 +16,9 @@ import java.util.stream.Collectors;
 public class BatchSummaryListener implements JobExecutionListener {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchSummaryListener.class);
+    private static final String HEADER = "timestamp,read,write,skip,status,index_rebuild_ms";
+    // cabeçalho de arquivos gravados antes da coluna index_rebuild_ms
+    private static final String PREVIOUS_HEADER = "timestamp,read,write,skip,status";
     private final String summaryPath;
 
     public BatchSummaryListener(String summaryPath) {
@@ -27,13 +30,23 @@ public class BatchSummaryListener implements JobExecutionListener {
         long readCount = jobExecution.getStepExecutions().stream().mapToLong(s -> s.getReadCount()).sum();
         long writeCount = jobExecution.getStepExecutions().stream().mapToLong(s -> s.getWriteCount()).sum();
         long skipCount = jobExecution.getStepExecutions().stream().mapToLong(s -> s.getSkipCount()).sum();
+        // vazio quando o job não adiou índices (IndexLifecycleListener)
+        String indexRebuildMs = jobExecution.getExecutionContext().containsKey(IndexLifecycleListener.REBUILD_MS_KEY)
+            ? String.valueOf(jobExecution.getExecutionContext().getLong(IndexLifecycleListener.REBUILD_MS_KEY))
+            : "";
 
         Path path = Path.of(summaryPath);
+        try {
+            upgradeHeader(path);
+        } catch (IOException e) {
+            logger.warn("Failed to upgrade summary CSV header", e);
+        }
         try (FileWriter fw = new FileWriter(summaryPath, true)) {
             if (Files.notExists(path) || Files.size(path) == 0) {
-                fw.write("timestamp,read,write,skip,status\n");
+                fw.write(HEADER + "\n");
             }
-            fw.write(Instant.now() + "," + readCount + "," + writeCount + "," + skipCount + "," + jobExecution.getStatus() + "\n");
+            fw.write(Instant.now() + "," + readCount + "," + writeCount + "," + skipCount + "," + jobExecution.getStatus()
+                + "," + indexRebuildMs + "\n");
         } catch (IOException e) {
             logger.error("Failed to write summary CSV", e);
             return;
@@ -42,6 +55,18 @@ public class BatchSummaryListener implements JobExecutionListener {
         printLastThreeExecutions(path);
     }
 
+    // linhas antigas ficam com uma coluna a menos (index_rebuild_ms vazio para quem lê o CSV)
+    private static void upgradeHeader(Path path) throws IOException {
+        if (Files.notExists(path) || Files.size(path) == 0) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(path);
+        if (PREVIOUS_HEADER.equals(lines.get(0))) {
+            lines.set(0, HEADER);
+            Files.write(path, lines);
+        }
+    }
+
     private void printLastThreeExecutions(Path path) {
         try {
             List<String> rows = Files.readAllLines(path).stream()
@@ -51,7 +76,7 @@ public class BatchSummaryListener implements JobExecutionListener {
 
             int start = Math.max(0, rows.size() - 3);
             logger.info("Last {} execution metrics from {}", rows.size() - start, summaryPath);
-            logger.info("timestamp,read,write,skip,status");
+            logger.info(HEADER);
             for (int i = start; i < rows.size(); i++) {
                 logger.info(rows.get(i));
             }
@@ -0,0 +1,61 @@
+package com.example.loadbatch;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Orçamento global de bytes em memória (conteúdo lido e ainda não gravado no Mongo), compartilhado por todas as
+ * threads do step. O reader só espera em {@link #await()}; quem segura bytes nunca bloqueia aqui, então não há
+ * deadlock: o que está em andamento sempre termina e devolve espaço. Pode passar do limite em até um arquivo por
+ * thread (o tamanho só é conhecido depois da leitura).
+ */
+public class ByteBudget {
+
+    private final long limit;
+    private long inFlight;
+    private long peak;
+
+    public ByteBudget(long limit, MeterRegistry registry) {
+        this.limit = limit;
+        Gauge.builder("load.batch.memory.in.flight", this, ByteBudget::inFlight)
+            .baseUnit("bytes").description("Bytes read and not yet written").register(registry);
+        Gauge.builder("load.batch.memory.budget", this, b -> b.limit)
+            .baseUnit("bytes").description("Memory budget for bytes in flight").register(registry);
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    public synchronized long inFlight() {
+        return inFlight;
+    }
+
+    public synchronized long peak() {
+        return peak;
+    }
+
+    public synchronized boolean exhausted() {
+        return inFlight >= limit;
+    }
+
+    // bloqueia enquanto o orçamento estiver esgotado
+    public synchronized void await() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+    }
+
+    public synchronized void add(long bytes) {
+        inFlight += bytes;
+        peak = Math.max(peak, inFlight);
+    }
+
+    public synchronized void release(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        inFlight = Math.max(0, inFlight - bytes);
+        notifyAll();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+
+/**
+ * Fecha o chunk por bytes lidos além de por quantidade: o chunk termina ao chegar em {@code chunkSize} itens, em
+ * {@code maxChunkBytes} bytes de conteúdo, ou (com {@link ByteBudget}) quando o orçamento global se esgota e o chunk
+ * já tem algum item. Um chunk novo, sem itens, espera o orçamento antes da primeira leitura; assim quem espera nunca
+ * segura bytes.
+ * <p>
+ * Cada chunk roda inteiro numa thread, então os bytes do chunk corrente ficam num ThreadLocal e são devolvidos ao
+ * orçamento no fim do chunk (commit ou rollback). Bytes entregues a um bulk write assíncrono são contados de novo
+ * pelo writer até o write terminar.
+ */
+public class ByteBudgetCompletionPolicy extends SimpleCompletionPolicy implements ItemReadListener<FilePayload>, ChunkListener,
+        StepExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ByteBudgetCompletionPolicy.class);
+
+    private final long maxChunkBytes;
+    private final ByteBudget budget;
+    private final ThreadLocal<long[]> chunkBytes = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * @param maxChunkBytes 0 = só por quantidade
+     * @param budget null = sem orçamento global
+     */
+    public ByteBudgetCompletionPolicy(int chunkSize, long maxChunkBytes, ByteBudget budget) {
+        super(chunkSize);
+        this.maxChunkBytes = maxChunkBytes;
+        this.budget = budget;
+    }
+
+    // o RepeatTemplate consulta a versão com result depois de cada item e a sem result antes do primeiro
+    @Override
+    public boolean isComplete(RepeatContext context, RepeatStatus result) {
+        return super.isComplete(context, result) || bytesComplete();
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        return super.isComplete(context) || bytesComplete();
+    }
+
+    private boolean bytesComplete() {
+        long bytes = chunkBytes.get()[0];
+        return (maxChunkBytes > 0 && bytes >= maxChunkBytes) || (budget != null && bytes > 0 && budget.exhausted());
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        chunkBytes.get()[0] = 0;
+    }
+
+    @Override
+    public void beforeRead() {
+        if (budget == null || chunkBytes.get()[0] > 0) {
+            return;
+        }
+        try {
+            budget.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void afterRead(FilePayload item) {
+        chunkBytes.get()[0] += item.getSize();
+        if (budget != null) {
+            budget.add(item.getSize());
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        releaseChunk();
+    }
+
+    // rollback: o retry do chunk reprocessa os itens já lidos sem passar pelo reader de novo
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        releaseChunk();
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (budget != null) {
+            logger.info("Memory budget: peak {} MB in flight of {} MB", budget.peak() >> 20, budget.limit() >> 20);
+        }
+        return null;
+    }
+
+    private void releaseChunk() {
+        long[] bytes = chunkBytes.get();
+        if (budget != null) {
+            budget.release(bytes[0]);
+        }
+        bytes[0] = 0;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo distribuído: várias instâncias do job sobre o mesmo input-dir, cada uma andando a árvore inteira, mas só
+ * entregando ao step os arquivos que conseguiu pegar no {@link FileClaimStore}, em lotes de {@code batchSize}.
+ * Uma thread renova os leases a cada {@code heartbeatMs}; o writer marca os arquivos como done conforme grava.
+ * <p>
+ * Depois da varredura o nó assume os claims vencidos de nós mortos e, enquanto outros nós tiverem claims abertos,
+ * espera até um lease por novos vencidos: um nó que cair nesse intervalo tem o trabalho assumido por quem sobrou.
+ * A espera é limitada porque a thread que espera pode estar com um chunk pela metade, e os claims desse chunk só
+ * fecham quando ele termina (dois nós esperando um pelo outro travariam). Claims de um nó que cair depois disso
+ * ficam vencidos e são assumidos por uma nova execução com o mesmo run-id.
+ */
+public class ClaimingInputSource implements InputFileSource, StepExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClaimingInputSource.class);
+
+    private final InputFileSource delegate;
+    private final FileClaimStore claims;
+    private final Path root;
+    private final int batchSize;
+    private final long heartbeatMs;
+    private final long leaseMs;
+
+    private final Deque<Resource> pending = new ArrayDeque<>();
+    private ScheduledExecutorService heartbeat;
+    private boolean walkDone;
+    private boolean exhausted;
+    private volatile boolean stopped;
+    private long lingerUntil;
+    private long claimed;
+    private long takenOver;
+
+    public ClaimingInputSource(
+        InputFileSource delegate,
+        FileClaimStore claims,
+        Path root,
+        int batchSize,
+        long heartbeatMs,
+        long leaseMs
+    ) {
+        this.delegate = delegate;
+        this.claims = claims;
+        this.root = root;
+        this.batchSize = batchSize;
+        this.heartbeatMs = heartbeatMs;
+        this.leaseMs = leaseMs;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        delegate.open();
+        walkDone = false;
+        exhausted = false;
+        stopped = false;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("claim-heartbeat").daemon().factory());
+        heartbeat.scheduleWithFixedDelay(this::renewLeases, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        logger.info("Distributed mode: node {} claiming files in batches of {}", claims.owner(), batchSize);
+    }
+
+    private void renewLeases() {
+        try {
+            claims.heartbeat();
+        } catch (Exception e) {
+            // o próximo heartbeat tenta de novo; só perde o claim se falhar por mais que o lease
+            logger.warn("Failed to renew claims of node {}", claims.owner(), e);
+        }
+    }
+
+    @Override
+    public synchronized Resource next() throws IOException {
+        while (pending.isEmpty()) {
+            if (exhausted || stopped) {
+                return null;
+            }
+            if (!walkDone) {
+                claimNextBatch();
+            } else if (takeOverExpired()) {
+                lingerUntil = System.currentTimeMillis() + leaseMs + heartbeatMs;
+            } else {
+                if (System.currentTimeMillis() > lingerUntil || !claims.hasLiveClaims()) {
+                    exhausted = true;
+                    return null;
+                }
+                try {
+                    Thread.sleep(heartbeatMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        return pending.poll();
+    }
+
+    private void claimNextBatch() throws IOException {
+        Map<String, Resource> batch = new LinkedHashMap<>();
+        while (batch.size() < batchSize) {
+            Resource resource = delegate.next();
+            if (resource == null) {
+                walkDone = true;
+                lingerUntil = System.currentTimeMillis() + leaseMs + heartbeatMs;
+                break;
+            }
+            batch.put(resource.getFilename(), resource);
+        }
+        for (String name : claims.claim(new ArrayList<>(batch.keySet()))) {
+            pending.add(batch.get(name));
+            claimed++;
+        }
+    }
+
+    private boolean takeOverExpired() throws IOException {
+        List<String> gone = new ArrayList<>();
+        for (String name : claims.takeOverExpired(batchSize)) {
+            Resource resource = new DirectoryWalkSource.RelativeFileResource(root, root.resolve(name));
+            if (resource.exists()) {
+                pending.add(resource);
+                takenOver++;
+            } else {
+                // o dono anterior já tinha movido para o failed-dir
+                gone.add(name);
+            }
+        }
+        claims.markDone(gone);
+        return !pending.isEmpty() || !gone.isEmpty();
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        stopHeartbeat();
+        boolean completed = stepExecution.getStatus() == BatchStatus.COMPLETED;
+        try {
+            claims.release(completed);
+        } catch (Exception e) {
+            logger.warn("Failed to release claims of node {}; they expire after the lease", claims.owner(), e);
+        }
+        logger.info("Distributed mode: node {} claimed {} files and took over {}", claims.owner(), claimed, takenOver);
+        return null;
+    }
+
+    // fora do monitor: a thread em next() pode estar bloqueada no delegate (watch) segurando-o
+    @Override
+    public void stop() {
+        stopped = true;
+        delegate.stop();
+    }
+
+    @Override
+    public void close() {
+        stop();
+        synchronized (this) {
+            stopHeartbeat();
+            delegate.close();
+            pending.clear();
+        }
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+}
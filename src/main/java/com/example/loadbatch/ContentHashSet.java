@@ -0,0 +1,98 @@
+package com.example.loadbatch;
+
+/**
+ * Conjunto exato de hashes de 64 bits (content_hash) vistos na execução: tabelas {@code long[]} de endereçamento
+ * aberto, uma por faixa de lock, com ~16 bytes por hash em vez dos ~60 de um {@code Set<Long>}. Diferente de um
+ * Bloom filter, não tem falso positivo: um arquivo só é descartado se outro com o mesmo hash já foi convertido.
+ */
+public class ContentHashSet {
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public ContentHashSet(long expectedSize) {
+        int perStripe = (int) Math.min(1 << 20, Math.max(16, expectedSize / STRIPES));
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    public boolean contains(long hash) {
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            return stripe.contains(hash);
+        }
+    }
+
+    // false se o hash já estava no conjunto
+    public boolean add(long hash) {
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            return stripe.add(hash);
+        }
+    }
+
+    // bits altos escolhem a faixa, bits baixos a posição na tabela (o xxHash64 já é uniforme)
+    private Stripe stripeOf(long hash) {
+        return stripes[(int) (hash >>> 58)];
+    }
+
+    private static final class Stripe {
+        // 0 marca posição livre; o hash 0 fica num flag à parte
+        private long[] table;
+        private int size;
+        private boolean hasZero;
+
+        Stripe(int expectedSize) {
+            table = new long[Integer.highestOneBit(Math.max(8, expectedSize - 1)) << 2];
+        }
+
+        boolean contains(long hash) {
+            if (hash == 0) {
+                return hasZero;
+            }
+            int mask = table.length - 1;
+            for (int i = (int) hash & mask; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == hash) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean add(long hash) {
+            if (hash == 0) {
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            if (!insert(table, hash)) {
+                return false;
+            }
+            // carga máxima de 1/2: a sondagem linear continua curta
+            if (++size > table.length >> 1) {
+                long[] grown = new long[table.length << 1];
+                for (long value : table) {
+                    if (value != 0) {
+                        insert(grown, value);
+                    }
+                }
+                table = grown;
+            }
+            return true;
+        }
+
+        private static boolean insert(long[] table, long hash) {
+            int mask = table.length - 1;
+            int i = (int) hash & mask;
+            for (; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == hash) {
+                    return false;
+                }
+            }
+            table[i] = hash;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.loadbatch;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de buffers diretos de tamanho fixo para arquivos pequenos (abaixo do limiar de mmap).
+ * Quando o pool esgota, {@link #acquire()} devolve {@code null} e o reader cai para leitura em heap,
+ * nunca bloqueia (o chunk segura os buffers até o processamento).
+ */
+public class DirectBufferPool {
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public DirectBufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        int current;
+        do {
+            current = allocated.get();
+            if (current >= maxBuffers) {
+                return null;
+            }
+        } while (!allocated.compareAndSet(current, current + 1));
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer);
+    }
+}
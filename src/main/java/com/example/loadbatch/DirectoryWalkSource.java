@@ -0,0 +1,383 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Descobre os arquivos de entrada sob demanda, andando a árvore de diretórios de forma incremental
+ * ({@link Files#find}, um stat por entrada) em vez de listar tudo antes do job: os workers começam assim que os primeiros arquivos
+ * aparecem e só um lote de {@value #BATCH_SIZE} caminhos fica em memória. Cada lote passa pelo manifesto
+ * (modo incremental) numa única consulta.
+ * <p>
+ * Os globs de include/exclude são aplicados ao caminho relativo a input-dir (ex.: {@code **.xml},
+ * {@code 2024/**}); o nome do arquivo no batch (source_file, manifesto, failed-dir) também é o caminho relativo.
+ * <p>
+ * Com watch ligado, ao fim da varredura os diretórios visitados são observados ({@link WatchService}) e cada arquivo
+ * novo entra depois de ficar {@code settleMs} sem mudar de tamanho/mtime (cópia ainda em andamento). A fonte termina
+ * depois de {@code idleTimeoutMs} sem arquivos novos ou quando {@link #stop()} é chamado; com 0 só o stop encerra, e
+ * um shutdown hook o chama no SIGTERM/Ctrl+C, esperando o step fechar a fonte. A espera no WatchService acontece fora
+ * do monitor, então {@link #close()} e as threads que só querem o próximo arquivo da fila não ficam presas nela.
+ */
+public class DirectoryWalkSource implements InputFileSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWalkSource.class);
+    private static final int BATCH_SIZE = 1000;
+    private static final long POLL_MS = 500;
+    // quanto o shutdown hook segura a JVM esperando o step terminar o que já leu
+    private static final long SHUTDOWN_WAIT_MS = 30_000;
+
+    private final Path root;
+    private final boolean recursive;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final ProcessedFileManifest manifest;
+    private final boolean watch;
+    private final long settleMs;
+    private final long idleTimeoutMs;
+
+    private final Deque<Resource> pending = new ArrayDeque<>();
+    // arquivos vistos pelo watch esperando a cópia terminar: caminho -> {tamanho, mtime, visto desde}
+    private final Map<Path, long[]> settling = new LinkedHashMap<>();
+    private Stream<Path> walk;
+    private Iterator<Path> walkIterator;
+    private volatile WatchService watcher;
+    private long found;
+    // fim já detectado: as outras threads não esperam o idle timeout de novo
+    private boolean exhausted;
+    private volatile boolean stopped;
+    // só uma thread espera no WatchService; settling é dela (e do close, que pega o mesmo lock)
+    private final Object watchLock = new Object();
+    private Thread shutdownHook;
+    private CountDownLatch closed;
+
+    public DirectoryWalkSource(
+        Path root,
+        boolean recursive,
+        String includes,
+        String excludes,
+        ProcessedFileManifest manifest,
+        boolean watch,
+        long settleMs,
+        long idleTimeoutMs
+    ) {
+        this.root = root;
+        this.recursive = recursive;
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+        this.manifest = manifest;
+        this.watch = watch;
+        this.settleMs = settleMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    private static List<PathMatcher> matchers(String globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs.split(",")) {
+                if (!glob.isBlank()) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.trim()));
+                }
+            }
+        }
+        return matchers;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IllegalStateException("Input dir not found: " + root);
+        }
+        stopped = false;
+        if (watch) {
+            watcher = root.getFileSystem().newWatchService();
+            closed = new CountDownLatch(1);
+            shutdownHook = new Thread(this::stopAndAwaitClose, "input-watch-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        walk = Files.find(root, recursive ? Integer.MAX_VALUE : 1, (path, attributes) -> {
+            if (attributes.isDirectory()) {
+                if (watcher != null) {
+                    register(path);
+                }
+                return false;
+            }
+            return attributes.isRegularFile() && matches(path);
+        });
+        walkIterator = walk.iterator();
+        found = 0;
+        exhausted = false;
+        logger.info("Discovering input files under {} (recursive={}, watch={})", root, recursive, watch);
+    }
+
+    @Override
+    public Resource next() throws IOException {
+        while (true) {
+            synchronized (this) {
+                if (!pending.isEmpty()) {
+                    return pending.poll();
+                }
+                if (exhausted || stopped) {
+                    return null;
+                }
+                if (walkIterator.hasNext() || !watch) {
+                    addBatch(walkIterator.hasNext() ? nextWalkBatch() : List.of());
+                    continue;
+                }
+            }
+            synchronized (watchLock) {
+                synchronized (this) {
+                    // outra thread trouxe arquivos (ou encerrou a fonte) enquanto esta esperava o lock
+                    if (!pending.isEmpty() || exhausted || stopped) {
+                        continue;
+                    }
+                }
+                List<Resource> batch = nextWatchBatch();
+                synchronized (this) {
+                    addBatch(batch);
+                }
+            }
+        }
+    }
+
+    // lote vazio = fim da fonte
+    private void addBatch(List<Resource> batch) throws IOException {
+        if (batch.isEmpty()) {
+            exhausted = true;
+            return;
+        }
+        found += batch.size();
+        Resource[] resources = batch.toArray(Resource[]::new);
+        if (manifest != null) {
+            resources = manifest.filterUnprocessed(resources);
+        }
+        pending.addAll(List.of(resources));
+    }
+
+    /** Encerra a espera por arquivos novos: as threads em {@link #next()} recebem o que já estava na fila e depois null. */
+    @Override
+    public void stop() {
+        stopped = true;
+        WatchService current = watcher;
+        if (current != null) {
+            try {
+                // acorda o poll na hora, com ClosedWatchServiceException
+                current.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close watch service for {}", root, e);
+            }
+        }
+    }
+
+    private void stopAndAwaitClose() {
+        logger.info("Shutdown requested: no longer watching {}", root);
+        stop();
+        try {
+            if (!closed.await(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Step did not finish within {}ms of shutdown", SHUTDOWN_WAIT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Resource> nextWalkBatch() throws IOException {
+        List<Resource> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (batch.size() < BATCH_SIZE && walkIterator.hasNext()) {
+                batch.add(resource(walkIterator.next()));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!walkIterator.hasNext()) {
+            logger.info("Finished walking {}: {} files found", root, found + batch.size());
+        }
+        return batch;
+    }
+
+    // bloqueia até haver arquivos novos estáveis; lista vazia = idle timeout ou fonte fechada
+    private List<Resource> nextWatchBatch() throws IOException {
+        List<Resource> batch = new ArrayList<>();
+        long idleSince = System.nanoTime();
+        while (batch.isEmpty()) {
+            if (stopped) {
+                return batch;
+            }
+            if (idleTimeoutMs > 0 && settling.isEmpty()
+                    && System.nanoTime() - idleSince > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs)) {
+                logger.info("No new files under {} for {}ms, finishing", root, idleTimeoutMs);
+                return batch;
+            }
+            WatchKey key;
+            try {
+                key = watcher.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (ClosedWatchServiceException e) {
+                return batch;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return batch;
+            }
+            if (key != null) {
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.warn("Watch events lost under {}; files created meanwhile are picked up by the next run", dir);
+                        continue;
+                    }
+                    onCreatedOrModified(dir.resolve((Path) event.context()));
+                }
+                key.reset();
+                idleSince = System.nanoTime();
+            }
+            promoteSettled(batch);
+        }
+        return batch;
+    }
+
+    private void onCreatedOrModified(Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            if (recursive) {
+                // diretório novo: registra a subárvore e pega o que já foi copiado para dentro dela
+                try (Stream<Path> tree = Files.walk(path)) {
+                    for (Path p : (Iterable<Path>) tree::iterator) {
+                        if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                            register(p);
+                        } else if (Files.isRegularFile(p) && matches(p)) {
+                            settling.putIfAbsent(p, new long[]{-1, -1, System.nanoTime()});
+                        }
+                    }
+                }
+            }
+        } else if (Files.isRegularFile(path) && matches(path)) {
+            settling.putIfAbsent(path, new long[]{-1, -1, System.nanoTime()});
+        }
+    }
+
+    private void promoteSettled(List<Resource> batch) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, long[]>> it = settling.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, long[]> entry = it.next();
+            long[] seen = entry.getValue();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                // removido ou renomeado antes de estabilizar
+                it.remove();
+                continue;
+            }
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (size != seen[0] || modified != seen[1]) {
+                seen[0] = size;
+                seen[1] = modified;
+                seen[2] = now;
+            } else if (now - seen[2] >= TimeUnit.MILLISECONDS.toNanos(settleMs)) {
+                batch.add(resource(entry.getKey()));
+                it.remove();
+            }
+        }
+    }
+
+    private void register(Path dir) {
+        try {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (ClosedWatchServiceException e) {
+            // stop() no meio da varredura: o resto da árvore ainda é lido, só não é mais observado
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean matches(Path path) {
+        Path relative = root.relativize(path);
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(relative)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher include : includes) {
+            if (include.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Resource resource(Path path) {
+        return new RelativeFileResource(root, path);
+    }
+
+    @Override
+    public void close() {
+        // sem isso o close esperaria o watchLock até o próximo arquivo ou o idle timeout
+        stop();
+        synchronized (watchLock) {
+            synchronized (this) {
+                if (walk != null) {
+                    walk.close();
+                    walk = null;
+                }
+                watcher = null;
+                pending.clear();
+                settling.clear();
+            }
+        }
+        if (shutdownHook != null) {
+            closed.countDown();
+            if (Thread.currentThread() != shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    // JVM já está encerrando
+                }
+            }
+            shutdownHook = null;
+        }
+    }
+
+    /** Arquivo identificado pelo caminho relativo a input-dir ({@code a/b/invoice.xml}), sempre com '/'. */
+    static final class RelativeFileResource extends FileSystemResource {
+        private final String relativeName;
+
+        RelativeFileResource(Path root, Path path) {
+            super(path);
+            this.relativeName = root.relativize(path).toString().replace('\\', '/');
+        }
+
+        @Override
+        public String getFilename() {
+            return relativeName;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.loadbatch;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reader do step multi-thread sobre uma {@link InputFileSource}: só a escolha do próximo arquivo é serializada,
+ * a leitura do conteúdo acontece em paralelo nas threads do step. Um pacote compactado é lido entrada a entrada,
+ * por uma thread de cada vez, enquanto as outras seguem com os próximos arquivos da fonte.
+ */
+public class DiscoveringItemReader implements ItemStreamReader<FilePayload> {
+
+    private final InputFileSource source;
+    private final WholeFileItemReader fileReader;
+    // pacotes abertos ainda com entradas; cada um é lido por uma thread de cada vez
+    private final Queue<ArchiveEntryReader> archives = new ConcurrentLinkedQueue<>();
+    // pacotes abertos mais chamadas à fonte em andamento: um pacote recém-devolvido conta antes de ser aberto
+    private final AtomicInteger openArchives = new AtomicInteger();
+
+    public DiscoveringItemReader(InputFileSource source, WholeFileItemReader fileReader) {
+        this.source = source;
+        this.fileReader = fileReader;
+    }
+
+    @Override
+    public FilePayload read() throws Exception {
+        while (true) {
+            ArchiveEntryReader archive = archives.poll();
+            if (archive != null) {
+                FilePayload payload = nextEntry(archive);
+                if (payload != null) {
+                    return payload;
+                }
+                continue;
+            }
+            Resource resource;
+            openArchives.incrementAndGet();
+            try {
+                resource = source.next();
+            } catch (IOException | RuntimeException e) {
+                openArchives.decrementAndGet();
+                throw e;
+            }
+            if (resource == null) {
+                if (openArchives.decrementAndGet() == 0) {
+                    return null;
+                }
+                // fonte acabou, mas outra thread ainda está com um pacote (ou acabou de tirá-lo da fonte): null aqui
+                // encerraria o step antes dele
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            if (!ArchiveEntryReader.isArchive(resource)) {
+                openArchives.decrementAndGet();
+                return fileReader.load(resource);
+            }
+            ArchiveEntryReader opened;
+            try {
+                opened = ArchiveEntryReader.open(resource, 0);
+            } catch (IOException | RuntimeException e) {
+                openArchives.decrementAndGet();
+                throw e;
+            }
+            FilePayload payload = nextEntry(opened);
+            if (payload != null) {
+                return payload;
+            }
+        }
+    }
+
+    // devolve o pacote à fila enquanto tiver entradas; fecha no fim ou em erro de leitura
+    private FilePayload nextEntry(ArchiveEntryReader archive) throws IOException {
+        FilePayload payload;
+        try {
+            payload = archive.next();
+        } catch (IOException | RuntimeException e) {
+            closeArchive(archive);
+            throw e;
+        }
+        if (payload == null) {
+            closeArchive(archive);
+        } else {
+            archives.add(archive);
+        }
+        return payload;
+    }
+
+    private void closeArchive(ArchiveEntryReader archive) throws IOException {
+        openArchives.decrementAndGet();
+        archive.close();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            source.open();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open input source", e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {}
+
+    @Override
+    public void close() throws ItemStreamException {
+        source.close();
+        ArchiveEntryReader archive;
+        while ((archive = archives.poll()) != null) {
+            try {
+                closeArchive(archive);
+            } catch (IOException e) {
+                // step já terminou; não há mais o que ler
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.loadbatch;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Registro compartilhado de quem está processando cada arquivo no modo distribuído. Um claim tem dono e validade
+ * (lease); o dono renova a validade de todos os seus claims em {@link #heartbeat()} e, se parar de renovar, outro
+ * nó assume o arquivo em {@link #takeOverExpired(int)}. Nomes são os caminhos relativos a input-dir.
+ */
+public interface FileClaimStore {
+
+    String owner();
+
+    /** Tenta pegar os arquivos (novos ou com lease vencido); devolve só os que ficaram com este nó. */
+    List<String> claim(List<String> names) throws IOException;
+
+    /** Assume até {@code limit} claims vencidos de outros nós (nó morto ou travado). */
+    List<String> takeOverExpired(int limit) throws IOException;
+
+    /** Outro nó ainda tem claim válido (o fim do step espera por ele: pode morrer e deixar trabalho). */
+    boolean hasLiveClaims() throws IOException;
+
+    void heartbeat() throws IOException;
+
+    void markDone(Collection<String> names) throws IOException;
+
+    /**
+     * Fim do step: com sucesso os claims restantes deste nó (arquivos com erro, pacotes) viram done; sem sucesso
+     * o lease vence na hora para outro nó assumir.
+     */
+    void release(boolean completed) throws IOException;
+}
@@ -0,0 +1,264 @@
+package com.example.loadbatch;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Grava os lotes em segmentos locais para carga offline: {@code bson} (documentos BSON concatenados, o formato do
+ * mongorestore) ou {@code jsonl} (um Extended JSON relaxed por linha, o formato padrão do mongoimport), opcionalmente
+ * em gzip. Os segmentos se chamam {@code <prefixo>-<data>-<nnnnn>.<formato>[.gz]}, ficam como {@code .part} enquanto
+ * abertos e viram o próximo quando passam de {@code segmentMaxBytes}, sempre entre lotes.
+ * <p>
+ * Cada lote é encodado (e comprimido, como um membro gzip independente; membros concatenados formam um gzip válido) na
+ * thread que o grava, fora do lock; o lock só cobre os writes sequenciais do array do lote no FileChannel. Um lote
+ * conta como gravado quando seus bytes foram entregues ao SO; o fsync é feito ao fechar cada segmento. Se o write
+ * falhar, o segmento é truncado no início do lote e o lote inteiro vai para o failed-dir.
+ */
+public class FileInvoiceSink implements InvoiceSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileInvoiceSink.class);
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+    private static final String PART = ".part";
+
+    private final Path dir;
+    private final String prefix;
+    private final boolean json;
+    private final boolean gzip;
+    private final long segmentMaxBytes;
+    private final BatchMetricsListener metricsListener;
+    private final Codec<Document> documentCodec = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+    private final Codec<BsonDocument> bsonCodec = MongoClientSettings.getDefaultCodecRegistry().get(BsonDocument.class);
+
+    private String runStamp;
+    private FileChannel channel;
+    private Path segment;
+    private int segments;
+    private long segmentBytes;
+    private long totalBytes;
+    private long totalDocuments;
+
+    /**
+     * @param format {@code bson} ou {@code jsonl}
+     */
+    public FileInvoiceSink(Path dir, String prefix, String format, boolean gzip, long segmentMaxBytes,
+            BatchMetricsListener metricsListener) {
+        if (!"bson".equalsIgnoreCase(format) && !"jsonl".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unknown sink format: " + format + " (expected bson or jsonl)");
+        }
+        this.dir = dir;
+        this.prefix = prefix;
+        this.json = "jsonl".equalsIgnoreCase(format);
+        this.gzip = gzip;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.metricsListener = metricsListener;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        Files.createDirectories(dir);
+        runStamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        segments = 0;
+        totalBytes = 0;
+        totalDocuments = 0;
+        logger.info("Writing invoices to {} segments of up to {} MB in {}", extension(), segmentMaxBytes >> 20, dir);
+    }
+
+    @Override
+    public void write(List<InvoiceRecord> batch, List<InvoiceRecord> committed, BiConsumer<InvoiceRecord, String> failed) {
+        long start = System.nanoTime();
+        Bytes bytes = new Bytes(batch.size() * 2048);
+        try {
+            encode(batch, bytes, failed, committed);
+            if (!committed.isEmpty()) {
+                append(bytes, committed.size());
+            }
+        } catch (IOException e) {
+            logger.error("Failed to write {} invoices to {}", committed.size(), segment, e);
+            List<InvoiceRecord> lost = List.copyOf(committed);
+            committed.clear();
+            for (InvoiceRecord record : lost) {
+                failed.accept(record, e.getMessage());
+            }
+        } finally {
+            metricsListener.recordWriteTime(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            closeSegment();
+        }
+        logger.info("Wrote {} invoices ({} MB) to {} {} segments in {}", totalDocuments, totalBytes >> 20, segments,
+            extension(), dir);
+    }
+
+    // documentos que não encodam vão direto para failed; os outros vão para committed na ordem do lote
+    private void encode(List<InvoiceRecord> batch, Bytes bytes, BiConsumer<InvoiceRecord, String> failed,
+            List<InvoiceRecord> committed) throws IOException {
+        try (GZIPOutputStream compressed = gzip ? new FastGzipOutputStream(bytes) : null) {
+            if (json) {
+                Writer out = new OutputStreamWriter(compressed != null ? compressed : bytes, StandardCharsets.UTF_8);
+                for (InvoiceRecord record : batch) {
+                    String line;
+                    try {
+                        line = toJson(record);
+                    } catch (RuntimeException e) {
+                        failed.accept(record, "JSON encoding failed: " + e.getMessage());
+                        continue;
+                    }
+                    out.write(line);
+                    out.write('\n');
+                    committed.add(record);
+                }
+                out.flush();
+            } else {
+                BasicOutputBuffer bson = new BasicOutputBuffer(batch.size() * 2048);
+                for (InvoiceRecord record : batch) {
+                    int mark = bson.getPosition();
+                    try {
+                        toBson(record, bson);
+                    } catch (RuntimeException e) {
+                        bson.truncateToPosition(mark);
+                        failed.accept(record, "BSON encoding failed: " + e.getMessage());
+                        continue;
+                    }
+                    committed.add(record);
+                }
+                bson.pipe(compressed != null ? compressed : bytes);
+            }
+        }
+    }
+
+    private String toJson(InvoiceRecord record) {
+        BsonDocument bson = record.getBson();
+        if (bson != null) {
+            return bson.toJson(JSON_SETTINGS);
+        }
+        StringWriter line = new StringWriter(2048);
+        documentCodec.encode(new JsonWriter(line, JSON_SETTINGS), record.toDocument(), ENCODER_CONTEXT);
+        return line.toString();
+    }
+
+    // stax/typed já trazem os bytes BSON prontos; o jackson passa pelo codec de Document
+    private void toBson(InvoiceRecord record, BasicOutputBuffer out) {
+        BsonDocument bson = record.getBson();
+        if (bson instanceof RawBsonDocument raw) {
+            ByteBuffer bytes = raw.getByteBuffer().asNIO();
+            if (bytes.hasArray()) {
+                out.writeBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                return;
+            }
+        }
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(out)) {
+            if (bson != null) {
+                bsonCodec.encode(writer, bson, ENCODER_CONTEXT);
+            } else {
+                documentCodec.encode(writer, record.toDocument(), ENCODER_CONTEXT);
+            }
+        }
+    }
+
+    private synchronized void append(Bytes bytes, int documents) throws IOException {
+        if (channel == null || (segmentBytes > 0 && segmentBytes + bytes.size() > segmentMaxBytes)) {
+            if (channel != null) {
+                closeSegment();
+            }
+            openSegment();
+        }
+        long mark = channel.position();
+        try {
+            ByteBuffer data = ByteBuffer.wrap(bytes.array(), 0, bytes.size());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException e) {
+            // segmento fica íntegro: sem documento (ou membro gzip) cortado no meio
+            channel.truncate(mark);
+            channel.position(mark);
+            throw e;
+        }
+        segmentBytes += bytes.size();
+        totalBytes += bytes.size();
+        totalDocuments += documents;
+    }
+
+    private void openSegment() throws IOException {
+        segments++;
+        segment = dir.resolve(String.format("%s-%s-%05d.%s", prefix, runStamp, segments, extension()));
+        channel = FileChannel.open(partOf(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        segmentBytes = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        Files.move(partOf(segment), segment, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Closed segment {} ({} MB)", segment.getFileName(), segmentBytes >> 20);
+    }
+
+    private static Path partOf(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + PART);
+    }
+
+    private String extension() {
+        return (json ? "jsonl" : "bson") + (gzip ? ".gz" : "");
+    }
+
+    // lote encodado, lido sem a cópia do toByteArray
+    private static class Bytes extends ByteArrayOutputStream {
+
+        Bytes(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    // nível 1: comprime bem XML convertido e não vira o gargalo do lote
+    private static class FastGzipOutputStream extends GZIPOutputStream {
+
+        FastGzipOutputStream(Bytes out) throws IOException {
+            super(out, 1 << 16);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+/**
+ * Divide a lista de arquivos de entrada em N partições balanceadas por bytes e por quantidade de arquivos.
+ * Cada arquivo custa {@code tamanho + tamanho médio}, então partições com muitos arquivos pequenos e
+ * partições com poucos arquivos grandes acabam com custo parecido.
+ * <p>
+ * A lista de cada partição, ordenada por nome, vai para o ExecutionContext ({@value #PARTITION_RESOURCES}) e o
+ * reader é montado a partir dela: no restart o Spring Batch reaproveita o contexto anterior, então a posição salva
+ * pelo MultiResourceItemReader aponta para os mesmos arquivos mesmo que input-dir ou o manifesto tenham mudado.
+ */
+public class FilePartitioner implements Partitioner {
+
+    public static final String PARTITION_INDEX = "partition.index";
+    public static final String PARTITION_RESOURCES = "partition.resources";
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePartitioner.class);
+
+    private final Path root;
+    private final Supplier<Resource[]> resources;
+
+    public FilePartitioner(Path root, Supplier<Resource[]> resources) {
+        this.root = root;
+        this.resources = resources;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Resource[] all = resources.get();
+        long[] sizes = new long[all.length];
+        long totalBytes = 0;
+        for (int i = 0; i < all.length; i++) {
+            sizes[i] = sizeOf(all[i]);
+            totalBytes += sizes[i];
+        }
+        long overhead = all.length > 0 ? Math.max(1, totalBytes / all.length) : 1;
+
+        // LPT: maiores primeiro, sempre na partição de menor custo acumulado
+        Integer[] order = new Integer[all.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> sizes[i]).reversed()
+            .thenComparing(i -> all[i].getFilename(), Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        Bucket[] buckets = new Bucket[gridSize];
+        PriorityQueue<Bucket> byCost = new PriorityQueue<>(
+            Comparator.<Bucket>comparingLong(b -> b.cost).thenComparingInt(b -> b.index));
+        for (int i = 0; i < gridSize; i++) {
+            buckets[i] = new Bucket(i);
+            byCost.add(buckets[i]);
+        }
+        for (int i : order) {
+            Bucket bucket = byCost.poll();
+            bucket.files.add(all[i]);
+            bucket.bytes += sizes[i];
+            bucket.cost += sizes[i] + overhead;
+            byCost.add(bucket);
+        }
+
+        Map<String, ExecutionContext> contexts = new LinkedHashMap<>();
+        for (Bucket bucket : buckets) {
+            bucket.files.sort(Comparator.comparing(Resource::getFilename, Comparator.nullsFirst(Comparator.naturalOrder())));
+            ArrayList<String> keys = new ArrayList<>(bucket.files.size());
+            for (Resource file : bucket.files) {
+                keys.add(keyOf(file));
+            }
+
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(PARTITION_INDEX, bucket.index);
+            context.put(PARTITION_RESOURCES, keys);
+            context.putInt("partition.files", bucket.files.size());
+            context.putLong("partition.bytes", bucket.bytes);
+            contexts.put("partition" + bucket.index, context);
+            logger.info("Partition {}: files={} bytes={}", bucket.index, bucket.files.size(), bucket.bytes);
+        }
+        return contexts;
+    }
+
+    /** Monta de novo os arquivos (ou fatias) de uma partição a partir das chaves gravadas no ExecutionContext. */
+    public Resource[] getPartition(List<String> keys) throws IOException {
+        Resource[] files = new Resource[keys.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = resolve(keys.get(i));
+        }
+        return files;
+    }
+
+    // file:<nome>, zip:<de>:<até>:<bytes>:<nome> ou xml:<de>:<até>:<tamanho>:<elemento>:<nome>; nome relativo a input-dir
+    private static String keyOf(Resource resource) {
+        if (resource instanceof ArchiveEntryReader.ZipSliceResource slice) {
+            return "zip:" + slice.key();
+        }
+        if (resource instanceof XmlFragmentReader.XmlRangeResource range) {
+            return "xml:" + range.key();
+        }
+        return "file:" + resource.getFilename();
+    }
+
+    private Resource resolve(String key) throws IOException {
+        String[] parts;
+        if (key.startsWith("zip:")) {
+            parts = key.substring(4).split(":", 4);
+            return new ArchiveEntryReader.ZipSliceResource(file(parts[3]), Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+        }
+        if (key.startsWith("xml:")) {
+            parts = key.substring(4).split(":", 5);
+            return new XmlFragmentReader.XmlRangeResource(file(parts[4]), parts[3], Long.parseLong(parts[0]),
+                Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        }
+        if (key.startsWith("file:")) {
+            return file(key.substring(5));
+        }
+        throw new IllegalArgumentException("Unknown partition resource key: " + key);
+    }
+
+    private Resource file(String relativeName) {
+        return new DirectoryWalkSource.RelativeFileResource(root, root.resolve(relativeName));
+    }
+
+    private static long sizeOf(Resource resource) {
+        try {
+            return resource.contentLength();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static final class Bucket {
+        private final int index;
+        private final List<Resource> files = new ArrayList<>();
+        private long bytes;
+        private long cost;
+
+        Bucket(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -1,19 +1,120 @@
 package com.example.loadbatch;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 public class FilePayload {
     private final String filename;
     private final byte[] content;
+    private final ByteBuffer buffer;
+    private final DirectBufferPool pool;
+    private long lastModified;
+    // só nos arquivos amostrados pelo FileTraceSink
+    private FileTrace trace;
+    private boolean released = false;
 
     public FilePayload(String filename, byte[] content) {
         this.filename = filename;
         this.content = content;
+        this.buffer = null;
+        this.pool = null;
+    }
+
+    // conteúdo fora do heap: arquivo mapeado (pool == null) ou buffer direto emprestado do pool
+    public FilePayload(String filename, ByteBuffer buffer, DirectBufferPool pool) {
+        this.filename = filename;
+        this.content = null;
+        this.buffer = buffer;
+        this.pool = pool;
     }
 
     public String getFilename() {
         return filename;
     }
 
+    // copia para o heap quando o conteúdo está num ByteBuffer; prefira openStream()
     public byte[] getContent() {
-        return content;
+        if (content != null) {
+            return content;
+        }
+        ByteBuffer view = view();
+        byte[] copy = new byte[view.remaining()];
+        view.get(copy);
+        return copy;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public FileTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(FileTrace trace) {
+        this.trace = trace;
+    }
+
+    public long getSize() {
+        return content != null ? content.length : buffer.remaining();
+    }
+
+    public long contentHash() {
+        return XxHash64.hash(content != null ? ByteBuffer.wrap(content) : view(), 0);
+    }
+
+    public InputStream openStream() {
+        return content != null ? new ByteArrayInputStream(content) : new ByteBufferInputStream(view());
+    }
+
+    // devolve o buffer ao pool; depois disso o conteúdo não pode mais ser lido
+    public void release() {
+        if (pool != null && !released) {
+            released = true;
+            pool.release(buffer);
+        }
+    }
+
+    private ByteBuffer view() {
+        if (released) {
+            throw new IllegalStateException("Payload already released: " + filename);
+        }
+        return buffer.duplicate();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
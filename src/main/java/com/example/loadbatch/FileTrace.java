@@ -0,0 +1,34 @@
+package com.example.loadbatch;
+
+/**
+ * Linha do trace de um arquivo amostrado ({@link FileTraceSink}): criada na leitura, acompanha o
+ * {@link FilePayload} e depois o {@link InvoiceRecord} até o desfecho (gravado, filtrado ou com erro).
+ */
+public class FileTrace {
+
+    public enum Outcome { WRITTEN, FILTERED, PROCESS_ERROR, WRITE_FAILED }
+
+    final String filename;
+    final long size;
+    final long readNanos;
+    final String thread;
+    final long chunkId;
+    long convertNanos;
+    long writeNanos;
+    // marcado pelo writer quando o documento é descartado
+    volatile boolean writeFailed;
+    // o rescan de um chunk com erro pode gravar o mesmo item de novo
+    boolean emitted;
+
+    public FileTrace(String filename, long size, long readNanos, String thread, long chunkId) {
+        this.filename = filename;
+        this.size = size;
+        this.readNanos = readNanos;
+        this.thread = thread;
+        this.chunkId = chunkId;
+    }
+
+    public void markWriteFailed() {
+        writeFailed = true;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trace por arquivo para achar os arquivos lentos: nome, tamanho, nanossegundos de leitura/conversão/bulk write,
+ * thread, chunk e desfecho, num arquivo binário colunar ({@code trace-<data>.lbt} em {@code dir}) lido pelo
+ * {@link TraceSummarizer}.
+ * <p>
+ * A amostragem é pelo hash do nome, então a mesma fração de arquivos é rastreada em toda execução e dá para comparar
+ * antes/depois de uma mudança no parser. Arquivo fora da amostra custa um hash; os amostrados vão para buffers de
+ * {@value #BLOCK_ROWS} linhas por coluna, gravados como um bloco. O tempo de write é o do bulk write que levou o
+ * documento (com recuperação de erros), não uma fração dele.
+ * <p>
+ * Formato: {@code "LBTRACE" 1} e blocos {@code int linhas}, dicionário de threads ({@code int n} + UTF), colunas
+ * name (UTF), size, read_ns, convert_ns, write_ns (long), thread (int, índice no dicionário), chunk (long),
+ * outcome (byte, {@link FileTrace.Outcome#ordinal()}).
+ */
+public class FileTraceSink implements ItemReadListener<FilePayload>, ItemProcessListener<FilePayload, InvoiceRecord>,
+        ChunkListener, StepExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileTraceSink.class);
+    static final byte[] MAGIC = {'L', 'B', 'T', 'R', 'A', 'C', 'E', 1};
+    private static final int BLOCK_ROWS = 4096;
+
+    private final Path dir;
+    // fração de 2^24 hashes amostrados
+    private final int threshold;
+    private final AtomicLong chunkSequence = new AtomicLong();
+    private final ThreadLocal<long[]> readStart = ThreadLocal.withInitial(() -> new long[1]);
+    private final ThreadLocal<long[]> currentChunk = ThreadLocal.withInitial(() -> new long[1]);
+
+    // bloco corrente, uma coluna por campo
+    private final String[] names = new String[BLOCK_ROWS];
+    private final long[] sizes = new long[BLOCK_ROWS];
+    private final long[] readNanos = new long[BLOCK_ROWS];
+    private final long[] convertNanos = new long[BLOCK_ROWS];
+    private final long[] writeNanos = new long[BLOCK_ROWS];
+    private final String[] threads = new String[BLOCK_ROWS];
+    private final long[] chunks = new long[BLOCK_ROWS];
+    private final byte[] outcomes = new byte[BLOCK_ROWS];
+    private int rows;
+    private long total;
+    private Path file;
+    private DataOutputStream out;
+
+    /**
+     * @param sampleRate 0..1
+     */
+    public FileTraceSink(Path dir, double sampleRate) {
+        this.dir = dir;
+        this.threshold = (int) Math.round(Math.min(1, Math.max(0, sampleRate)) * (1 << 24));
+    }
+
+    public boolean sampled(String filename) {
+        return ((filename.hashCode() * 0x9E3779B1) >>> 8) < threshold;
+    }
+
+    @Override
+    public synchronized void beforeStep(StepExecution stepExecution) {
+        if (out != null) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            file = dir.resolve("trace-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".lbt");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.write(MAGIC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create trace file in " + dir, e);
+        }
+        rows = 0;
+        total = 0;
+    }
+
+    @Override
+    public synchronized ExitStatus afterStep(StepExecution stepExecution) {
+        if (out == null) {
+            return null;
+        }
+        try {
+            flushBlock();
+            out.close();
+            logger.info("Trace: {} files written to {}", total, file);
+        } catch (IOException e) {
+            logger.warn("Failed to close trace file {}", file, e);
+        } finally {
+            out = null;
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        currentChunk.get()[0] = chunkSequence.incrementAndGet();
+    }
+
+    @Override
+    public void beforeRead() {
+        readStart.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterRead(FilePayload item) {
+        if (sampled(item.getFilename())) {
+            item.setTrace(new FileTrace(item.getFilename(), item.getSize(), System.nanoTime() - readStart.get()[0],
+                Thread.currentThread().getName(), currentChunk.get()[0]));
+        }
+    }
+
+    @Override
+    public void afterProcess(FilePayload item, InvoiceRecord result) {
+        FileTrace trace = item.getTrace();
+        if (trace == null) {
+            return;
+        }
+        if (result == null) {
+            emit(trace, FileTrace.Outcome.FILTERED);
+            return;
+        }
+        trace.convertNanos = result.getProcessNanos();
+        result.setTrace(trace);
+    }
+
+    @Override
+    public void onProcessError(FilePayload item, Exception e) {
+        FileTrace trace = item.getTrace();
+        if (trace != null) {
+            emit(trace, FileTrace.Outcome.PROCESS_ERROR);
+        }
+    }
+
+    // chamado pelo writer depois de cada bulk write (na thread do pool no modo async-writes)
+    public void written(List<InvoiceRecord> batch, long nanos) {
+        for (InvoiceRecord record : batch) {
+            FileTrace trace = record.getTrace();
+            if (trace != null) {
+                trace.writeNanos = nanos;
+                emit(trace, trace.writeFailed ? FileTrace.Outcome.WRITE_FAILED : FileTrace.Outcome.WRITTEN);
+            }
+        }
+    }
+
+    private synchronized void emit(FileTrace trace, FileTrace.Outcome outcome) {
+        if (out == null || trace.emitted) {
+            return;
+        }
+        trace.emitted = true;
+        names[rows] = trace.filename;
+        sizes[rows] = trace.size;
+        readNanos[rows] = trace.readNanos;
+        convertNanos[rows] = trace.convertNanos;
+        writeNanos[rows] = trace.writeNanos;
+        threads[rows] = trace.thread;
+        chunks[rows] = trace.chunkId;
+        outcomes[rows] = (byte) outcome.ordinal();
+        total++;
+        if (++rows == BLOCK_ROWS) {
+            try {
+                flushBlock();
+            } catch (IOException e) {
+                // trace é diagnóstico: não derruba o job
+                logger.warn("Failed to write trace block to {}; tracing stopped", file, e);
+                out = null;
+            }
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> threadNames = new ArrayList<>();
+        int[] threadIds = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            threadIds[i] = dictionary.computeIfAbsent(threads[i], name -> {
+                threadNames.add(name);
+                return threadNames.size() - 1;
+            });
+        }
+        out.writeInt(rows);
+        out.writeInt(threadNames.size());
+        for (String name : threadNames) {
+            out.writeUTF(name);
+        }
+        for (int i = 0; i < rows; i++) {
+            out.writeUTF(names[i]);
+        }
+        writeColumn(sizes);
+        writeColumn(readNanos);
+        writeColumn(convertNanos);
+        writeColumn(writeNanos);
+        for (int i = 0; i < rows; i++) {
+            out.writeInt(threadIds[i]);
+        }
+        writeColumn(chunks);
+        out.write(outcomes, 0, rows);
+        rows = 0;
+    }
+
+    private void writeColumn(long[] column) throws IOException {
+        for (int i = 0; i < rows; i++) {
+            out.writeLong(column[i]);
+        }
+    }
+}
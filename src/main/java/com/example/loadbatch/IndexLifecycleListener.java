@@ -0,0 +1,146 @@
+package com.example.loadbatch;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.RenameCollectionOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Carga em massa sem manter índices secundários a cada insert: antes do job os índices da coleção são
+ * registrados e adiados; depois do job são recriados num único createIndexes (uma varredura da coleção para todos).
+ * <ul>
+ *   <li>{@code drop}: os índices não únicos são removidos da própria coleção e recriados no fim.</li>
+ *   <li>{@code staging}: a carga vai para uma coleção {@code <coleção>_staging} vazia, que ganha os índices no fim
+ *   e substitui a coleção com renameCollection (dropTarget). É uma recarga completa: o que estava na coleção some.</li>
+ * </ul>
+ * Índices únicos ficam durante a carga (o upsert depende do content_hash_1; recriar depois falharia com duplicatas).
+ * O tempo de recriação (e do rename) vai para o ExecutionContext do job em {@value #REBUILD_MS_KEY}.
+ * <p>
+ * As specs adiadas são logadas por inteiro e gravadas no ExecutionContext do job ({@value #DEFERRED_KEY}) antes de
+ * qualquer drop: se o processo morrer no meio da carga, o restart do job recria também os índices que a execução
+ * anterior já tinha removido. Se a recriação (ou o rename) falhar, o job termina FAILED.
+ */
+public class IndexLifecycleListener implements JobExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexLifecycleListener.class);
+    public static final String REBUILD_MS_KEY = "index.rebuildMs";
+    public static final String DEFERRED_KEY = "index.deferred";
+    private static final String STAGING_SUFFIX = "_staging";
+
+    private final MongoDatabase database;
+    private final String collection;
+    private final boolean staging;
+
+    // specs como vêm do listIndexes (sem v/ns), prontos para o createIndexes
+    private List<Document> deferred = List.of();
+    private JobRepository jobRepository;
+
+    public IndexLifecycleListener(MongoDatabase database, String collection, boolean staging) {
+        this.database = database;
+        this.collection = collection;
+        this.staging = staging;
+    }
+
+    // grava as specs adiadas antes do primeiro step (o Spring Batch só grava o contexto do job depois de cada step)
+    public void setJobRepository(JobRepository jobRepository) {
+        this.jobRepository = jobRepository;
+    }
+
+    // coleção onde o writer grava durante o job
+    public String loadCollection() {
+        return staging ? collection + STAGING_SUFFIX : collection;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        MongoCollection<Document> target = database.getCollection(collection);
+        List<Document> unique = new ArrayList<>();
+        deferred = new ArrayList<>();
+        for (Document index : target.listIndexes()) {
+            if ("_id_".equals(index.getString("name"))) {
+                continue;
+            }
+            index.remove("v");
+            index.remove("ns");
+            (index.getBoolean("unique", false) ? unique : deferred).add(index);
+        }
+        List<String> present = deferred.stream().map(index -> index.getString("name")).toList();
+        ExecutionContext context = jobExecution.getExecutionContext();
+        if (context.containsKey(DEFERRED_KEY)) {
+            // restart: o que a execução anterior removeu não aparece mais no listIndexes
+            for (Object spec : (List<?>) context.get(DEFERRED_KEY)) {
+                Document index = Document.parse((String) spec);
+                if (!present.contains(index.getString("name"))) {
+                    deferred.add(index);
+                }
+            }
+        }
+        ArrayList<String> specs = new ArrayList<>();
+        for (Document index : deferred) {
+            specs.add(index.toJson());
+        }
+        context.put(DEFERRED_KEY, specs);
+        if (jobRepository != null) {
+            jobRepository.updateExecutionContext(jobExecution);
+        }
+        logger.info("Deferred index specs of {}: {}", collection, specs);
+        if (staging) {
+            // sobra de um job que falhou antes do rename
+            database.getCollection(loadCollection()).drop();
+            createIndexes(loadCollection(), unique);
+        } else {
+            for (String name : present) {
+                target.dropIndex(name);
+            }
+        }
+        logger.info("Index mode {}: deferring {} secondary indexes of {} until the load finishes ({} unique kept)",
+            staging ? "staging" : "drop", deferred.size(), collection, unique.size());
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (staging && jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            logger.warn("Job {}: {} left in place for inspection, {} unchanged", jobExecution.getStatus(), loadCollection(),
+                collection);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            // no modo drop os índices voltam mesmo com o job falho: a coleção não pode ficar sem eles
+            createIndexes(loadCollection(), deferred);
+            if (staging) {
+                database.getCollection(loadCollection()).renameCollection(
+                    new MongoNamespace(database.getName(), collection), new RenameCollectionOptions().dropTarget(true));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to rebuild indexes on {}; recreate them manually: {}", loadCollection(), deferred, e);
+            // só o log não basta: o scheduler precisa ver que a coleção ficou sem os índices
+            jobExecution.setStatus(BatchStatus.FAILED);
+            jobExecution.setExitStatus(ExitStatus.FAILED.addExitDescription(e));
+            jobExecution.addFailureException(e);
+            return;
+        }
+        long rebuildMs = (System.nanoTime() - start) / 1_000_000;
+        jobExecution.getExecutionContext().putLong(REBUILD_MS_KEY, rebuildMs);
+        logger.info("Rebuilt {} indexes on {} in {} ms{}", deferred.size(), collection, rebuildMs,
+            staging ? " (swapped in from " + loadCollection() + ")" : "");
+    }
+
+    private void createIndexes(String name, List<Document> indexes) {
+        if (!indexes.isEmpty()) {
+            database.runCommand(new Document("createIndexes", name).append("indexes", indexes));
+        }
+    }
+}
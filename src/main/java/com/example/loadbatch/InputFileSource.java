@@ -0,0 +1,62 @@
+package com.example.loadbatch;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fonte dos arquivos de entrada consumida pelos readers do step multi-thread. {@link #next()} é thread-safe e
+ * devolve null quando não há mais arquivos (numa fonte com watch, pode bloquear esperando novos).
+ */
+public interface InputFileSource extends AutoCloseable {
+
+    Resource next() throws IOException;
+
+    default void open() throws IOException {}
+
+    // encerra uma espera em next(); chamado de fora do monitor, sem esperar a thread que está lendo
+    default void stop() {}
+
+    @Override
+    default void close() {}
+
+    // XMLs a partir de minSize passam a ser lidos elemento a elemento (XmlFragmentReader); 0 = como estão
+    default InputFileSource splitting(long minSize, String element) {
+        if (minSize <= 0) {
+            return this;
+        }
+        InputFileSource files = this;
+        return new InputFileSource() {
+            @Override
+            public Resource next() throws IOException {
+                Resource resource = files.next();
+                return resource == null ? null : XmlFragmentReader.split(resource, minSize, element, 0).get(0);
+            }
+
+            @Override
+            public void open() throws IOException {
+                files.open();
+            }
+
+            @Override
+            public void stop() {
+                files.stop();
+            }
+
+            @Override
+            public void close() {
+                files.close();
+            }
+        };
+    }
+
+    // lista já materializada (modo padrão, ordenada por nome)
+    static InputFileSource of(Resource[] resources) {
+        AtomicInteger cursor = new AtomicInteger();
+        return () -> {
+            int index = cursor.getAndIncrement();
+            return index < resources.length ? resources[index] : null;
+        };
+    }
+}
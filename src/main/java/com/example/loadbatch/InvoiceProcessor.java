@@ -0,0 +1,99 @@
+package com.example.loadbatch;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.Map;
+
+public class InvoiceProcessor implements ItemProcessor<FilePayload, InvoiceRecord> {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceProcessor.class);
+
+    private final XmlMapper xmlMapper = new XmlMapper();
+    private final StaxBsonConverter staxConverter;
+    private final TypedInvoiceConverter typedConverter;
+    // null = sem cache de strings
+    private final StringInterner interner;
+    private final boolean streaming;
+    private final boolean typed;
+    private final boolean contentHashing;
+    // conteúdos já vistos nesta execução; null = sem deduplicação
+    private final ContentHashSet seenContent;
+
+    /**
+     * @param converter {@code jackson}, {@code stax} ou {@code typed} (esquema da fatura tipado, stax como fallback)
+     */
+    public InvoiceProcessor(String converter, boolean contentHashing, ContentHashSet seenContent) {
+        this(converter, contentHashing, seenContent, null);
+    }
+
+    /**
+     * @param interner valores repetidos entre faturas saem de um cache em vez de uma String nova; null = desligado
+     */
+    public InvoiceProcessor(String converter, boolean contentHashing, ContentHashSet seenContent, StringInterner interner) {
+        this.interner = interner;
+        this.staxConverter = new StaxBsonConverter(interner);
+        this.typedConverter = new TypedInvoiceConverter(interner);
+        this.typed = "typed".equalsIgnoreCase(converter);
+        this.streaming = typed || "stax".equalsIgnoreCase(converter);
+        this.contentHashing = contentHashing;
+        this.seenContent = seenContent;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public InvoiceRecord process(FilePayload payload) throws Exception {
+        try {
+            long t0 = System.nanoTime();
+            Long contentHash = null;
+            if (contentHashing) {
+                contentHash = payload.contentHash();
+                if (seenContent != null && seenContent.contains(contentHash)) {
+                    logger.debug("Skipping {}: same content already imported in this run", payload.getFilename());
+                    return null;
+                }
+            }
+
+            InvoiceRecord record;
+            if (streaming) {
+                RawBsonDocument doc = typed ? typedConverter.convert(payload.openStream(), payload.getFilename(), contentHash) : null;
+                if (doc == null) {
+                    if (typed) {
+                        logger.debug("{} does not match the invoice schema, using the generic converter", payload.getFilename());
+                    }
+                    doc = staxConverter.convert(payload.openStream(), payload.getFilename(), contentHash);
+                }
+                record = new InvoiceRecord(payload.getFilename(), doc);
+            } else {
+                Map<String, Object> map = xmlMapper.readValue(payload.openStream(), Map.class);
+                if (interner != null) {
+                    // as chaves já vêm do symbol table do parser; os valores ficam retidos até o bulk write
+                    interner.internValues(map);
+                }
+                record = new InvoiceRecord(payload.getFilename(), map);
+            }
+            if (contentHash != null) {
+                record.setContentHash(contentHash);
+                if (seenContent != null) {
+                    seenContent.add(contentHash);
+                }
+            }
+            long nanos = System.nanoTime() - t0;
+            record.setProcessNanos(nanos);
+            record.setSource(payload.getSize(), payload.getLastModified());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Processed {} in {}us", payload.getFilename(), nanos / 1_000);
+            }
+            return record;
+        } catch (Exception e) {
+            logger.error("Error converting XML for file {}", payload.getFilename(), e);
+            throw e;
+        } finally {
+            // buffer direto volta ao pool assim que o conteúdo foi convertido
+            payload.release();
+        }
+    }
+}
@@ -1,15 +1,31 @@
 package com.example.loadbatch;
 
+import org.bson.BsonDocument;
+import org.bson.Document;
+
 import java.util.Map;
 
 public class InvoiceRecord {
     private final String filename;
     private final Map<String, Object> data;
-    private long processMs;
+    private final BsonDocument bson;
+    private long processNanos;
+    private long sourceSize;
+    private long sourceModified;
+    private Long contentHash;
+    private FileTrace trace;
 
     public InvoiceRecord(String filename, Map<String, Object> data) {
         this.filename = filename;
         this.data = data;
+        this.bson = null;
+    }
+
+    // documento já convertido em BSON (inclui source_file)
+    public InvoiceRecord(String filename, BsonDocument bson) {
+        this.filename = filename;
+        this.data = null;
+        this.bson = bson;
     }
 
     public String getFilename() {
@@ -20,11 +36,57 @@ public class InvoiceRecord {
         return data;
     }
 
-    public long getProcessMs() {
-        return processMs;
+    public BsonDocument getBson() {
+        return bson;
+    }
+
+    // caminho jackson: o Map vira o documento gravado, com source_file e content_hash
+    public Document toDocument() {
+        Document doc = new Document(data);
+        doc.put("source_file", filename);
+        if (contentHash != null) {
+            doc.put("content_hash", contentHash);
+        }
+        return doc;
+    }
+
+    public long getProcessNanos() {
+        return processNanos;
+    }
+
+    public void setProcessNanos(long processNanos) {
+        this.processNanos = processNanos;
+    }
+
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    // xxHash64 do conteúdo; null no modo insert
+    public Long getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(Long contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    // null quando o arquivo não foi amostrado pelo FileTraceSink
+    public FileTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(FileTrace trace) {
+        this.trace = trace;
     }
 
-    public void setProcessMs(long processMs) {
-        this.processMs = processMs;
+    // tamanho e mtime do arquivo de origem, usados pelo manifesto de arquivos processados
+    public void setSource(long size, long lastModified) {
+        this.sourceSize = size;
+        this.sourceModified = lastModified;
     }
 }
@@ -0,0 +1,26 @@
+package com.example.loadbatch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Destino dos lotes do {@link InvoiceWriter}: o Mongo ({@link MongoInvoiceSink}) ou segmentos locais
+ * ({@link FileInvoiceSink}) para importar depois com mongorestore/mongoimport.
+ */
+public interface InvoiceSink {
+
+    /**
+     * Grava um lote; chamado em paralelo pelas threads de chunk (ou pelo pool de bulk writes no modo async-writes).
+     * O que foi gravado vai para {@code committed}; cada registro descartado vai para {@code failed} com o motivo.
+     */
+    void write(List<InvoiceRecord> batch, List<InvoiceRecord> committed, BiConsumer<InvoiceRecord, String> failed);
+
+    // antes do primeiro lote
+    default void open() throws IOException {
+    }
+
+    // depois do último lote, com os bulk writes assíncronos já drenados
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+/**
+ * Grava os InvoiceRecord em lotes de até {@code writerBatchSize} documentos no {@link InvoiceSink} (Mongo ou
+ * arquivos locais) e cuida do que vem depois do lote: manifesto, claims, trace e failed-dir.
+ * <p>
+ * No modo pipeline ({@link #enablePipelining}) cada lote vai para um pool dedicado e a thread do chunk
+ * volta a ler/converter; no máximo {@code maxInFlight} lotes ficam pendentes e, acima disso, a thread
+ * do chunk bloqueia (backpressure). O chunk é commitado antes do sink confirmar, então falhas por documento
+ * são reportadas ao {@link BatchErrorHandler}/{@link BatchMetricsListener} e o arquivo vai para o failed-dir.
+ * Qualquer outra falha de um lote (queda do Mongo, timeout) deixa os arquivos onde estão e é relançada no próximo
+ * write, no drain ou no afterStep, falhando o step como no modo síncrono. O afterStep espera todos os writes
+ * pendentes terminarem.
+ */
+public class InvoiceWriter implements ItemWriter<InvoiceRecord>, StepExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceWriter.class);
+
+    private final InvoiceSink sink;
+    private final int writerBatchSize;
+    private final String inputDir;
+    private final String failedDir;
+    private final BatchMetricsListener metricsListener;
+    private final BatchErrorHandler errorHandler;
+    // no modo particionado o writer é listener do manager e de cada worker: o sink abre no primeiro e fecha no último
+    private final AtomicInteger openSteps = new AtomicInteger();
+    // primeira falha de um lote assíncrono que não é de documento; relançada nas threads do chunk
+    private final AtomicReference<RuntimeException> asyncFailure = new AtomicReference<>();
+
+    private IntSupplier batchSize;
+    private ProcessedFileManifest manifest;
+    private FileClaimStore claims;
+    private FileTraceSink traceSink;
+    private TaskExecutor writerPool;
+    private Semaphore inFlight;
+    private int maxInFlight;
+    private ByteBudget byteBudget;
+
+    public InvoiceWriter(
+        InvoiceSink sink,
+        int writerBatchSize,
+        String inputDir,
+        String failedDir,
+        BatchMetricsListener metricsListener,
+        BatchErrorHandler errorHandler
+    ) {
+        this.sink = sink;
+        this.writerBatchSize = writerBatchSize;
+        this.inputDir = inputDir;
+        this.failedDir = failedDir;
+        this.metricsListener = metricsListener;
+        this.errorHandler = errorHandler;
+        this.batchSize = () -> writerBatchSize;
+    }
+
+    // tamanho do lote lido a cada chunk (AdaptiveTuner)
+    public void setBatchSizeSupplier(IntSupplier batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setManifest(ProcessedFileManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    // modo distribuído: arquivo gravado deixa de ser assumível por outro nó
+    public void setClaims(FileClaimStore claims) {
+        this.claims = claims;
+    }
+
+    public void setTraceSink(FileTraceSink traceSink) {
+        this.traceSink = traceSink;
+    }
+
+    // lotes assíncronos continuam contando no orçamento de memória depois que o chunk termina
+    public void setByteBudget(ByteBudget byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    public void enablePipelining(int writerThreads, int maxInFlight) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(writerThreads);
+        executor.setMaxPoolSize(writerThreads);
+        executor.setThreadNamePrefix("invoice-writer-");
+        executor.setDaemon(true);
+        executor.initialize();
+        enablePipelining(executor, maxInFlight);
+    }
+
+    // modo virtual-threads: uma thread virtual por lote, o limite é só o semáforo de in-flight
+    public void enablePipelining(TaskExecutor executor, int maxInFlight) {
+        this.writerPool = executor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void write(Chunk<? extends InvoiceRecord> items) throws Exception {
+        rethrowAsyncFailure();
+        File failDir = new File(failedDir);
+        failDir.mkdirs();
+
+        int bulkSize = batchSize.getAsInt();
+        List<InvoiceRecord> batch = new ArrayList<>(Math.min(items.size(), bulkSize));
+        for (InvoiceRecord record : items) {
+            batch.add(record);
+
+            if (batch.size() >= bulkSize) {
+                submit(batch);
+                batch = new ArrayList<>(Math.min(items.size(), bulkSize));
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            submit(batch);
+        }
+    }
+
+    private void submit(List<InvoiceRecord> batch) throws InterruptedException {
+        if (writerPool == null) {
+            flush(batch);
+            return;
+        }
+        inFlight.acquire();
+        long bytes = 0;
+        if (byteBudget != null) {
+            for (InvoiceRecord record : batch) {
+                bytes += record.getSourceSize();
+            }
+            byteBudget.add(bytes);
+        }
+        long batchBytes = bytes;
+        try {
+            writerPool.execute(() -> {
+                try {
+                    flush(batch);
+                } catch (RuntimeException e) {
+                    // falhas por documento já chegaram em fail() pelo sink; o resto derruba o step
+                    logger.error("Async write of {} invoices failed", batch.size(), e);
+                    if (!asyncFailure.compareAndSet(null, e)) {
+                        asyncFailure.get().addSuppressed(e);
+                    }
+                } finally {
+                    releaseBytes(batchBytes);
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseBytes(batchBytes);
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void releaseBytes(long bytes) {
+        if (byteBudget != null) {
+            byteBudget.release(bytes);
+        }
+    }
+
+    // bloqueia até todos os lotes pendentes terminarem
+    public void drain() throws InterruptedException {
+        if (writerPool == null) {
+            return;
+        }
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        rethrowAsyncFailure();
+    }
+
+    // mesma exceção do sink, para o noSkip do step valer igual ao modo síncrono
+    private void rethrowAsyncFailure() {
+        RuntimeException failure = asyncFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        if (openSteps.getAndIncrement() == 0) {
+            asyncFailure.set(null);
+            try {
+                sink.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open invoice sink", e);
+            }
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        ExitStatus exitStatus = null;
+        try {
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for pending bulk writes");
+        } catch (RuntimeException e) {
+            // exceção no afterStep só é logada pelo Spring Batch: o step é marcado como falho aqui
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(e);
+            exitStatus = ExitStatus.FAILED.addExitDescription(e);
+        }
+        if (openSteps.decrementAndGet() == 0) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                logger.error("Failed to close invoice sink", e);
+                return ExitStatus.FAILED;
+            }
+        }
+        return exitStatus;
+    }
+
+    private void flush(List<InvoiceRecord> batch) {
+        List<InvoiceRecord> committed = new ArrayList<>(batch.size());
+        long start = System.nanoTime();
+        boolean written = false;
+        try {
+            sink.write(batch, committed, this::fail);
+            written = true;
+        } finally {
+            if (traceSink != null) {
+                // lote que derrubou o step também entra no trace, justamente os arquivos que interessam
+                if (!written) {
+                    for (InvoiceRecord record : batch) {
+                        if (record.getTrace() != null) {
+                            record.getTrace().markWriteFailed();
+                        }
+                    }
+                }
+                traceSink.written(batch, System.nanoTime() - start);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Wrote chunk size {} ({} committed)", batch.size(), committed.size());
+        }
+        if (manifest != null) {
+            manifest.markCommitted(committed);
+        }
+        if (claims != null) {
+            markClaimsDone(committed);
+        }
+    }
+
+    // entradas de pacote e elementos de um XML dividido ficam de fora: o arquivo só vira done no fim do step
+    private void markClaimsDone(List<InvoiceRecord> committed) {
+        Set<String> files = new LinkedHashSet<>();
+        for (InvoiceRecord record : committed) {
+            String name = record.getFilename();
+            if (!name.contains(ArchiveEntryReader.ENTRY_SEPARATOR) && !name.contains(XmlFragmentReader.OFFSET_SEPARATOR)) {
+                files.add(name);
+            }
+        }
+        try {
+            claims.markDone(files);
+        } catch (Exception e) {
+            // o fim do step marca de novo; até lá o lease continua sendo renovado
+            logger.warn("Failed to mark {} claims as done", files.size(), e);
+        }
+    }
+
+    private void fail(InvoiceRecord record, String message) {
+        logger.error("Failed to write invoice {}: {}", record.getFilename(), message);
+        metricsListener.recordWriteFailure();
+        if (record.getTrace() != null) {
+            record.getTrace().markWriteFailed();
+        }
+        errorHandler.onDocumentWriteError(record.getFilename(), message);
+        moveToFailedDir(record.getFilename());
+    }
+
+    private void moveToFailedDir(String filename) {
+        try {
+            File src = new File(inputDir, filename);
+            File dest = new File(failedDir, filename);
+            if (src.exists()) {
+                // com load-batch.recursive o nome é o caminho relativo (a/b/invoice.xml)
+                Files.createDirectories(dest.toPath().getParent());
+                Files.move(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                logger.warn("Moved failed file {} to {}", filename, failedDir);
+            }
+        } catch (Exception moveEx) {
+            logger.error("Failed to move file {} to failed dir", filename, moveEx);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Claims como arquivos num diretório compartilhado ({@code claim-dir/runId}), para rodar sem coleção extra no
+ * Mongo: {@code <arquivo>.claim} criado com CREATE_NEW (só um nó consegue) e com o dono no conteúdo; a validade é o
+ * mtime + lease, renovado pelo heartbeat; {@code <arquivo>.done} marca o fim. Para assumir um claim vencido o nó o
+ * renomeia atomicamente para um nome próprio (só um rename vence) e cria um claim novo.
+ * <p>
+ * Depende de create/rename atômicos: disco local ou NFS v4. Entre conferir a validade e renomear, outro nó pode ter
+ * renovado o claim; o rename é desfeito nesse caso, mas a janela não é zero como no {@link MongoFileClaimStore}.
+ */
+public class LockFileClaimStore implements FileClaimStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LockFileClaimStore.class);
+    private static final String CLAIM = ".claim";
+    private static final String DONE = ".done";
+
+    private final Path dir;
+    private final String owner;
+    private final long leaseMs;
+    // claims deste nó ainda abertos (o heartbeat renova só esses)
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    public LockFileClaimStore(Path claimDir, String runId, String owner, long leaseMs) throws IOException {
+        this.dir = Files.createDirectories(claimDir.resolve(encode(runId)));
+        this.owner = owner;
+        this.leaseMs = leaseMs;
+    }
+
+    @Override
+    public String owner() {
+        return owner;
+    }
+
+    @Override
+    public List<String> claim(List<String> names) throws IOException {
+        List<String> won = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (Files.exists(doneFile(name))) {
+                continue;
+            }
+            if (create(name) || (expired(claimFile(name)) && takeOver(name))) {
+                won.add(name);
+            }
+        }
+        return won;
+    }
+
+    @Override
+    public List<String> takeOverExpired(int limit) throws IOException {
+        List<String> won = new ArrayList<>();
+        try (DirectoryStream<Path> claims = Files.newDirectoryStream(dir, "*" + CLAIM)) {
+            for (Path claim : claims) {
+                if (won.size() >= limit) {
+                    break;
+                }
+                String name = nameOf(claim);
+                if (!held.contains(name) && expired(claim) && takeOver(name)) {
+                    won.add(name);
+                }
+            }
+        }
+        return won;
+    }
+
+    @Override
+    public boolean hasLiveClaims() throws IOException {
+        try (DirectoryStream<Path> claims = Files.newDirectoryStream(dir, "*" + CLAIM)) {
+            for (Path claim : claims) {
+                if (!held.contains(nameOf(claim))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void heartbeat() throws IOException {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (String name : held) {
+            Path claim = claimFile(name);
+            try {
+                if (!owner.equals(Files.readString(claim))) {
+                    throw new NoSuchFileException(claim.toString());
+                }
+                Files.setLastModifiedTime(claim, now);
+            } catch (NoSuchFileException e) {
+                // se ainda estava em held (não foi um markDone concorrente), o heartbeat atrasou mais que o lease
+                if (held.remove(name)) {
+                    logger.warn("Lost claim on {} to another node", name);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void markDone(Collection<String> names) throws IOException {
+        for (String name : names) {
+            if (!held.remove(name)) {
+                continue;
+            }
+            // .done antes de apagar o .claim: não há instante em que o arquivo pareça livre
+            try {
+                Files.writeString(doneFile(name), owner, StandardOpenOption.CREATE_NEW);
+            } catch (FileAlreadyExistsException e) {
+                // outro nó assumiu e terminou antes
+            }
+            Files.deleteIfExists(claimFile(name));
+        }
+    }
+
+    @Override
+    public void release(boolean completed) throws IOException {
+        List<String> open = new ArrayList<>(held);
+        if (completed) {
+            markDone(open);
+        } else {
+            for (String name : open) {
+                try {
+                    Files.setLastModifiedTime(claimFile(name), FileTime.fromMillis(0));
+                } catch (NoSuchFileException e) {
+                    // já assumido por outro nó
+                }
+            }
+            held.clear();
+        }
+        if (!open.isEmpty()) {
+            logger.info("Released {} claims as {}", open.size(), completed ? "done" : "expired");
+        }
+    }
+
+    private boolean create(String name) throws IOException {
+        try {
+            Files.writeString(claimFile(name), owner, StandardOpenOption.CREATE_NEW);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        // o dono anterior pode ter terminado entre a checagem do .done e o create
+        if (Files.exists(doneFile(name))) {
+            Files.deleteIfExists(claimFile(name));
+            return false;
+        }
+        held.add(name);
+        return true;
+    }
+
+    private boolean takeOver(String name) throws IOException {
+        Path claim = claimFile(name);
+        Path stale = claim.resolveSibling(claim.getFileName() + "." + encode(owner) + ".stale");
+        try {
+            Files.move(claim, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!expired(stale)) {
+            // renovado entre a checagem e o rename: devolve sem sobrescrever um claim criado nesse meio tempo
+            try {
+                Files.createLink(claim, stale);
+            } catch (FileAlreadyExistsException e) {
+                // outro nó já criou um claim novo
+            }
+            Files.delete(stale);
+            return false;
+        }
+        String previous = Files.readString(stale);
+        Files.delete(stale);
+        if (!create(name)) {
+            return false;
+        }
+        logger.info("Took over {} from node {}", name, previous);
+        return true;
+    }
+
+    private boolean expired(Path claim) throws IOException {
+        try {
+            return Files.getLastModifiedTime(claim).toMillis() + leaseMs < System.currentTimeMillis();
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private Path claimFile(String name) {
+        return dir.resolve(encode(name) + CLAIM);
+    }
+
+    private Path doneFile(String name) {
+        return dir.resolve(encode(name) + DONE);
+    }
+
+    private static String nameOf(Path claim) {
+        String file = claim.getFileName().toString();
+        return URLDecoder.decode(file.substring(0, file.length() - CLAIM.length()), StandardCharsets.UTF_8);
+    }
+
+    // caminho relativo vira um nome de arquivo só ('/' -> %2F)
+    private static String encode(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.loadbatch;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Claims numa coleção do Mongo de destino, um documento por arquivo ({@code _id = runId/arquivo}, owner, state,
+ * expiresAt). O claim de um lote é um insertMany não ordenado: a chave duplicada diz que outro nó já pegou o
+ * arquivo. Assumir um lease vencido é um findOneAndUpdate condicionado ao dono e à validade lidos, então só um nó
+ * ganha. Os claims ficam na coleção depois do job: um nó que sobe atrasado no mesmo run-id não reimporta nada.
+ * <p>
+ * A validade usa o relógio de cada nó; o lease precisa ser bem maior que a diferença entre os relógios.
+ */
+public class MongoFileClaimStore implements FileClaimStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoFileClaimStore.class);
+    private static final String CLAIMED = "claimed";
+    private static final String DONE = "done";
+
+    private final MongoCollection<Document> collection;
+    private final String runId;
+    private final String owner;
+    private final long leaseMs;
+
+    public MongoFileClaimStore(MongoCollection<Document> collection, String runId, String owner, long leaseMs) {
+        // claim confirmado pela maioria: um failover não pode devolver o mesmo arquivo para outro nó
+        this.collection = collection.withWriteConcern(WriteConcern.MAJORITY);
+        this.runId = runId;
+        this.owner = owner;
+        this.leaseMs = leaseMs;
+        this.collection.createIndex(Indexes.ascending("run", "state", "expiresAt"));
+    }
+
+    @Override
+    public String owner() {
+        return owner;
+    }
+
+    @Override
+    public List<String> claim(List<String> names) {
+        if (names.isEmpty()) {
+            return names;
+        }
+        Date expiresAt = new Date(System.currentTimeMillis() + leaseMs);
+        List<Document> claims = new ArrayList<>(names.size());
+        for (String name : names) {
+            claims.add(new Document("_id", id(name))
+                .append("run", runId)
+                .append("file", name)
+                .append("owner", owner)
+                .append("state", CLAIMED)
+                .append("expiresAt", expiresAt));
+        }
+        try {
+            collection.insertMany(claims, new InsertManyOptions().ordered(false));
+            return names;
+        } catch (MongoBulkWriteException e) {
+            boolean[] taken = new boolean[names.size()];
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                taken[error.getIndex()] = true;
+            }
+            List<String> won = new ArrayList<>(names.size());
+            List<String> takenIds = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                if (taken[i]) {
+                    takenIds.add(id(names.get(i)));
+                } else {
+                    won.add(names.get(i));
+                }
+            }
+            // já com dono: só interessam os vencidos (normalmente nenhum, uma consulta só)
+            for (Document expired : collection.find(Filters.and(Filters.in("_id", takenIds), expiredFilter()))) {
+                if (takeOver(expired)) {
+                    won.add(expired.getString("file"));
+                }
+            }
+            return won;
+        }
+    }
+
+    @Override
+    public List<String> takeOverExpired(int limit) {
+        List<String> won = new ArrayList<>();
+        for (Document expired : collection.find(Filters.and(Filters.eq("run", runId), expiredFilter())).limit(limit)) {
+            if (takeOver(expired)) {
+                won.add(expired.getString("file"));
+            }
+        }
+        return won;
+    }
+
+    private Bson expiredFilter() {
+        return Filters.and(Filters.eq("state", CLAIMED), Filters.lt("expiresAt", new Date()));
+    }
+
+    // compare-and-set sobre o dono e a validade lidos: outro nó que assumiu antes (ou o dono que renovou) vence
+    private boolean takeOver(Document expired) {
+        Document updated = collection.findOneAndUpdate(
+            Filters.and(
+                Filters.eq("_id", expired.get("_id")),
+                Filters.eq("state", CLAIMED),
+                Filters.eq("owner", expired.getString("owner")),
+                Filters.eq("expiresAt", expired.getDate("expiresAt"))),
+            Updates.combine(
+                Updates.set("owner", owner),
+                Updates.set("expiresAt", new Date(System.currentTimeMillis() + leaseMs))));
+        if (updated != null) {
+            logger.info("Took over {} from node {}", expired.getString("file"), expired.getString("owner"));
+        }
+        return updated != null;
+    }
+
+    @Override
+    public boolean hasLiveClaims() {
+        return collection.countDocuments(
+            Filters.and(Filters.eq("run", runId), Filters.eq("state", CLAIMED), Filters.ne("owner", owner)),
+            new CountOptions().limit(1)) > 0;
+    }
+
+    @Override
+    public void heartbeat() {
+        collection.updateMany(ownClaims(),
+            Updates.set("expiresAt", new Date(System.currentTimeMillis() + leaseMs)));
+    }
+
+    @Override
+    public void markDone(Collection<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(names.size());
+        for (String name : names) {
+            ids.add(id(name));
+        }
+        collection.updateMany(Filters.and(Filters.in("_id", ids), Filters.eq("owner", owner)),
+            Updates.combine(Updates.set("state", DONE), Updates.set("doneAt", new Date())));
+    }
+
+    @Override
+    public void release(boolean completed) {
+        Bson update = completed
+            ? Updates.combine(Updates.set("state", DONE), Updates.set("doneAt", new Date()))
+            : Updates.set("expiresAt", new Date(0));
+        long released = collection.updateMany(ownClaims(), update).getModifiedCount();
+        if (released > 0) {
+            logger.info("Released {} claims as {}", released, completed ? DONE : "expired");
+        }
+    }
+
+    private Bson ownClaims() {
+        return Filters.and(Filters.eq("run", runId), Filters.eq("owner", owner), Filters.eq("state", CLAIMED));
+    }
+
+    private String id(String name) {
+        return runId + "/" + name;
+    }
+}
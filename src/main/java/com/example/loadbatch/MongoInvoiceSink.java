@@ -0,0 +1,172 @@
+package com.example.loadbatch;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonSerializationException;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Grava os lotes no Mongo em bulk writes não ordenados, com InsertOneModel ou, no modo upsert, ReplaceOneModel
+ * por content_hash.
+ */
+public class MongoInvoiceSink implements InvoiceSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoInvoiceSink.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final boolean unacknowledgedWrites;
+    private final boolean upsert;
+    private final BatchMetricsListener metricsListener;
+
+    public MongoInvoiceSink(
+        MongoTemplate mongoTemplate,
+        String collectionName,
+        boolean unacknowledgedWrites,
+        boolean upsert,
+        BatchMetricsListener metricsListener
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.unacknowledgedWrites = unacknowledgedWrites;
+        this.upsert = upsert;
+        this.metricsListener = metricsListener;
+    }
+
+    @Override
+    public void open() {
+        if (upsert) {
+            // parcial: documentos gravados no modo insert não têm content_hash e não entram no índice
+            String index = mongoTemplate.getCollection(collectionName).createIndex(
+                Indexes.ascending("content_hash"),
+                new IndexOptions().name("content_hash_1").unique(true)
+                    .partialFilterExpression(Filters.exists("content_hash")));
+            logger.info("Upsert mode: unique index {} ready on {}", index, collectionName);
+        }
+    }
+
+    @Override
+    public void write(List<InvoiceRecord> batch, List<InvoiceRecord> committed, BiConsumer<InvoiceRecord, String> failed) {
+        MongoCollection<BsonDocument> collection = mongoTemplate.getCollection(collectionName)
+            .withDocumentClass(BsonDocument.class);
+        if (unacknowledgedWrites) {
+            collection = collection.withWriteConcern(WriteConcern.UNACKNOWLEDGED);
+        }
+        writeOrRecover(collection, batch, committed, failed, true);
+    }
+
+    // caminho stax já traz o BSON pronto; caminho jackson é encodado pelo driver direto do Document
+    private static BsonDocument toBsonDocument(InvoiceRecord record, CodecRegistry codecRegistry) {
+        if (record.getBson() != null) {
+            return record.getBson();
+        }
+        return BsonDocumentWrapper.asBsonDocument(record.toDocument(), codecRegistry);
+    }
+
+    private WriteModel<BsonDocument> toWriteModel(InvoiceRecord record, CodecRegistry codecRegistry) {
+        BsonDocument doc = toBsonDocument(record, codecRegistry);
+        if (upsert) {
+            return new ReplaceOneModel<>(Filters.eq("content_hash", record.getContentHash()), doc,
+                new ReplaceOptions().upsert(true));
+        }
+        return new InsertOneModel<>(doc);
+    }
+
+    /**
+     * Bulk write com recuperação sem cair para insert item a item:
+     * <ul>
+     *   <li>{@link MongoBulkWriteException}: o bulk é não ordenado, então só os índices de getWriteErrors()
+     *   falharam; eles são reenviados uma única vez num bulk menor e o que falhar de novo é descartado.</li>
+     *   <li>erro de encoding no cliente (documento acima de 16MB, tipo sem codec): o lote é dividido ao meio
+     *   recursivamente até isolar o documento problemático.</li>
+     * </ul>
+     * Um documento ruim custa O(log n) round-trips em vez de n. Erros de rede, timeout e seleção de servidor não
+     * dizem nada sobre os documentos: sobem para o step, que falha o chunk inteiro (reenviar metades num timeout
+     * ambíguo duplicaria documentos no modo insert).
+     */
+    private void writeOrRecover(
+        MongoCollection<BsonDocument> collection,
+        List<InvoiceRecord> batch,
+        List<InvoiceRecord> committed,
+        BiConsumer<InvoiceRecord, String> failed,
+        boolean retryFailedIndices
+    ) {
+        List<WriteModel<BsonDocument>> writes = new ArrayList<>(batch.size());
+        for (InvoiceRecord record : batch) {
+            writes.add(toWriteModel(record, collection.getCodecRegistry()));
+        }
+
+        long batchStart = System.nanoTime();
+        try {
+            collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            metricsListener.recordWriteTime(System.nanoTime() - batchStart);
+            committed.addAll(batch);
+        } catch (MongoBulkWriteException bulkEx) {
+            metricsListener.recordWriteTime(System.nanoTime() - batchStart);
+            Map<Integer, BulkWriteError> errors = new HashMap<>();
+            for (BulkWriteError error : bulkEx.getWriteErrors()) {
+                errors.put(error.getIndex(), error);
+            }
+            if (errors.isEmpty()) {
+                // só erro de write concern: os documentos foram aplicados no primário
+                logger.warn("Write concern error on bulk of {} items: {}", batch.size(), bulkEx.getWriteConcernError());
+                committed.addAll(batch);
+                return;
+            }
+
+            logger.warn("Bulk insert failed for {} of {} items", errors.size(), batch.size());
+            List<InvoiceRecord> retry = new ArrayList<>(errors.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (errors.containsKey(i)) {
+                    retry.add(batch.get(i));
+                } else {
+                    committed.add(batch.get(i));
+                }
+            }
+            if (retryFailedIndices) {
+                writeOrRecover(collection, retry, committed, failed, false);
+            } else {
+                for (int i = 0; i < batch.size(); i++) {
+                    BulkWriteError error = errors.get(i);
+                    if (error != null) {
+                        failed.accept(batch.get(i), error.getCode() + " " + error.getMessage());
+                    }
+                }
+            }
+        } catch (BsonSerializationException | BsonInvalidOperationException | CodecConfigurationException batchEx) {
+            metricsListener.recordWriteTime(System.nanoTime() - batchStart);
+            if (batch.size() == 1) {
+                logger.error("Failed to write invoice {}", batch.get(0).getFilename(), batchEx);
+                failed.accept(batch.get(0), batchEx.getMessage());
+                return;
+            }
+            logger.warn("Bulk insert failed for {} items, splitting in halves", batch.size(), batchEx);
+            int mid = batch.size() / 2;
+            writeOrRecover(collection, batch.subList(0, mid), committed, failed, retryFailedIndices);
+            writeOrRecover(collection, batch.subList(mid, batch.size()), committed, failed, retryFailedIndices);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.loadbatch;
+
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Executa o processor num pool fixo de threads de plataforma e espera o resultado. No modo virtual-threads a
+ * conversão XML (CPU) sai dos carriers das threads virtuais, que ficam livres para as leituras e os writes
+ * bloqueantes; o tamanho do pool é o limite de conversões simultâneas (normalmente o número de cores).
+ */
+public class OffloadingItemProcessor<I, O> implements ItemProcessor<I, O> {
+
+    private final ItemProcessor<I, O> delegate;
+    private final AsyncTaskExecutor cpuPool;
+
+    public OffloadingItemProcessor(ItemProcessor<I, O> delegate, AsyncTaskExecutor cpuPool) {
+        this.delegate = delegate;
+        this.cpuPool = cpuPool;
+    }
+
+    @Override
+    public O process(I item) throws Exception {
+        Future<O> result = cpuPool.submit(() -> delegate.process(item));
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw (Error) e.getCause();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reader do modo virtual-threads: cada arquivo é lido numa thread virtual própria e entregue pronto numa fila,
+ * então até {@code readAhead} leituras bloqueantes ficam em andamento (ou lidas esperando o step) ao mesmo tempo.
+ * O semáforo limita a janela de leitura antecipada, e com isso a memória ocupada por arquivos ainda não convertidos.
+ * Um pacote compactado é lido em sequência numa única thread virtual, uma vaga da janela por entrada.
+ * <p>
+ * A ordem de entrega é a de conclusão da leitura, não a da {@link InputFileSource}; sem estado de restart, como o
+ * reader compartilhado do step multi-thread.
+ */
+public class PrefetchingItemReader implements ItemStreamReader<FilePayload> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrefetchingItemReader.class);
+
+    // fim da fonte; quem o tira da fila devolve para as outras threads também verem
+    private static final Object END = new Object();
+
+    private final InputFileSource source;
+    private final WholeFileItemReader fileReader;
+    private final int readAhead;
+
+    private Semaphore window;
+    private BlockingQueue<Object> ready;
+    // leituras em andamento + o próprio dispatcher; quem zerar publica o END
+    private AtomicInteger outstanding;
+    private ExecutorService readers;
+
+    public PrefetchingItemReader(InputFileSource source, WholeFileItemReader fileReader, int readAhead) {
+        this.source = source;
+        this.fileReader = fileReader;
+        this.readAhead = readAhead;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        window = new Semaphore(readAhead);
+        ready = new LinkedBlockingQueue<>();
+        outstanding = new AtomicInteger(1);
+        try {
+            source.open();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open input source", e);
+        }
+        readers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-reader-", 0).factory());
+        readers.execute(this::dispatch);
+        logger.info("Prefetching input files with up to {} reads ahead on virtual threads", readAhead);
+    }
+
+    private void dispatch() {
+        try {
+            Resource resource;
+            while (true) {
+                window.acquire();
+                resource = source.next();
+                if (resource == null) {
+                    window.release();
+                    break;
+                }
+                Resource next = resource;
+                outstanding.incrementAndGet();
+                readers.execute(() -> {
+                    if (ArchiveEntryReader.isArchive(next)) {
+                        loadArchive(next);
+                    } else {
+                        Object result;
+                        try {
+                            result = fileReader.load(next);
+                        } catch (RuntimeException e) {
+                            result = e;
+                        }
+                        ready.add(result);
+                    }
+                    finishOne();
+                });
+            }
+        } catch (InterruptedException e) {
+            // close() antes de todos os arquivos serem lidos
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Input discovery failed; finishing with the files found so far", e);
+        }
+        finishOne();
+    }
+
+    // a permissão do dispatcher cobre a primeira entrada; cada entrada seguinte ocupa mais uma vaga da janela
+    private void loadArchive(Resource archive) {
+        boolean holdingPermit = true;
+        try (ArchiveEntryReader entries = ArchiveEntryReader.open(archive, 0)) {
+            while (true) {
+                if (!holdingPermit) {
+                    window.acquire();
+                    holdingPermit = true;
+                }
+                FilePayload payload = entries.next();
+                if (payload == null) {
+                    break;
+                }
+                ready.add(payload);
+                holdingPermit = false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            ready.add(new RuntimeException("Failed to read archive: " + archive.getFilename(), e));
+            holdingPermit = false;
+        }
+        if (holdingPermit) {
+            window.release();
+        }
+    }
+
+    private void finishOne() {
+        if (outstanding.decrementAndGet() == 0) {
+            ready.add(END);
+        }
+    }
+
+    @Override
+    public FilePayload read() throws Exception {
+        Object next = ready.take();
+        if (next == END) {
+            ready.add(END);
+            return null;
+        }
+        window.release();
+        if (next instanceof RuntimeException e) {
+            throw e;
+        }
+        return (FilePayload) next;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {}
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (readers == null) {
+            return;
+        }
+        readers.shutdownNow();
+        source.close();
+        // step interrompido: devolve ao pool os buffers diretos já lidos e não consumidos
+        Object leftover;
+        while ((leftover = ready.poll()) != null) {
+            if (leftover instanceof FilePayload payload) {
+                payload.release();
+            }
+        }
+        readers = null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.loadbatch;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifesto persistente dos arquivos já gravados no Mongo (um documento por arquivo: _id = nome,
+ * size, lastModified). Permite que uma nova execução pule o que já foi importado e retome depois de
+ * uma queda processando só o delta. Um arquivo alterado (tamanho ou mtime diferentes) é reimportado.
+ */
+public class ProcessedFileManifest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessedFileManifest.class);
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    private final MongoCollection<Document> collection;
+
+    public ProcessedFileManifest(MongoCollection<Document> collection) {
+        this.collection = collection;
+    }
+
+    public Resource[] filterUnprocessed(Resource[] resources) throws IOException {
+        List<Resource> pending = new ArrayList<>(resources.length);
+        for (int start = 0; start < resources.length; start += LOOKUP_BATCH_SIZE) {
+            int end = Math.min(resources.length, start + LOOKUP_BATCH_SIZE);
+            List<String> names = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                names.add(resources[i].getFilename());
+            }
+
+            Map<String, Document> committed = new HashMap<>();
+            for (Document entry : collection.find(Filters.in("_id", names))
+                    .projection(Projections.include("size", "lastModified"))) {
+                committed.put(entry.getString("_id"), entry);
+            }
+
+            for (int i = start; i < end; i++) {
+                Resource resource = resources[i];
+                Document entry = committed.get(resource.getFilename());
+                if (entry == null
+                        || entry.getLong("size") != resource.contentLength()
+                        || entry.getLong("lastModified") != resource.lastModified()) {
+                    pending.add(resource);
+                }
+            }
+        }
+        logger.info("Manifest {}: {} of {} files already committed, {} pending",
+            collection.getNamespace(), resources.length - pending.size(), resources.length, pending.size());
+        return pending.toArray(Resource[]::new);
+    }
+
+    public void markCommitted(Collection<InvoiceRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        List<WriteModel<Document>> writes = new ArrayList<>(records.size());
+        for (InvoiceRecord record : records) {
+            Document entry = new Document("_id", record.getFilename())
+                .append("size", record.getSourceSize())
+                .append("lastModified", record.getSourceModified())
+                .append("committedAt", now);
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", record.getFilename()), entry,
+                new ReplaceOptions().upsert(true)));
+        }
+        try {
+            collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        } catch (Exception e) {
+            // só custa reimportar esses arquivos na próxima execução
+            logger.warn("Failed to record {} files in manifest", records.size(), e);
+        }
+    }
+}
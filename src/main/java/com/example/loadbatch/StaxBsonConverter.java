@@ -0,0 +1,226 @@
+package com.example.loadbatch;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converte XML direto para BSON via StAX, sem passar pelo {@code Map} do Jackson nem pelo {@code Document}.
+ * Produz o mesmo layout do {@code XmlMapper.readValue(..., Map.class)}: o elemento raiz é descartado,
+ * atributos viram campos, folhas viram strings e elementos repetidos (ex.: {@code <item>}) viram array
+ * na posição da primeira ocorrência.
+ * <p>
+ * Como um elemento repetido só é conhecido depois de lido, o XML vira primeiro uma árvore leve de
+ * {@link Node} e é encodado numa única passada, num único buffer.
+ */
+public class StaxBsonConverter {
+
+    private final XMLInputFactory inputFactory;
+    // null = sem cache de strings
+    private final StringInterner interner;
+
+    public StaxBsonConverter() {
+        this(null);
+    }
+
+    public StaxBsonConverter(StringInterner interner) {
+        this.interner = interner;
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @param sourceFile gravado no fim do documento ({@code source_file}), igual ao writer faz no caminho Jackson
+     * @param contentHash gravado como {@code content_hash} depois do source_file; null no modo insert
+     */
+    public RawBsonDocument convert(InputStream in, String sourceFile, Long contentHash) throws XMLStreamException, IOException {
+        // o XML é sempre maior que o BSON equivalente (nome de tag aparece duas vezes)
+        int sizeHint = Math.max(256, in.available());
+        Node root = parse(in);
+        BasicOutputBuffer buffer = new BasicOutputBuffer(sizeHint);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+            writeFields(writer, root);
+            if (sourceFile != null) {
+                writer.writeString("source_file", sourceFile);
+            }
+            if (contentHash != null) {
+                writer.writeInt64("content_hash", contentHash);
+            }
+            writer.writeEndDocument();
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    private Node parse(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            Deque<Node> stack = new ArrayDeque<>();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        Node parent = stack.peek();
+                        if (parent != null) {
+                            parent.flushMixedText();
+                        }
+                        Node node = new Node(reader.getLocalName());
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            node.addChild(new Node(reader.getAttributeLocalName(i), reader.getAttributeValue(i)));
+                        }
+                        if (parent != null) {
+                            parent.addChild(node);
+                        }
+                        stack.push(node);
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                        Node node = stack.peek();
+                        if (node != null) {
+                            node.appendText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength(), interner);
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        Node node = stack.pop();
+                        node.close();
+                        if (stack.isEmpty()) {
+                            return node;
+                        }
+                    }
+                    default -> {
+                        // comentários, PIs e espaços ignoráveis não entram no documento
+                    }
+                }
+            }
+            throw new XMLStreamException("XML without root element");
+        } finally {
+            reader.close();
+        }
+    }
+
+    // campos de um elemento; irmãos com o mesmo nome viram um array na posição do primeiro
+    private static void writeFields(BsonBinaryWriter writer, Node node) {
+        List<Node> children = node.children;
+        if (children == null) {
+            return;
+        }
+        if (children.size() == 1) {
+            Node child = children.get(0);
+            writer.writeName(child.name);
+            writeValue(writer, child);
+            return;
+        }
+        // agrupa numa passada: nome -> Node, ou List<Node> a partir da segunda ocorrência
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (Node child : children) {
+            Object existing = fields.putIfAbsent(child.name, child);
+            if (existing instanceof Node first) {
+                List<Node> repeated = new ArrayList<>(4);
+                repeated.add(first);
+                repeated.add(child);
+                fields.put(child.name, repeated);
+            } else if (existing != null) {
+                @SuppressWarnings("unchecked")
+                List<Node> repeated = (List<Node>) existing;
+                repeated.add(child);
+            }
+        }
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            writer.writeName(field.getKey());
+            if (field.getValue() instanceof Node child) {
+                writeValue(writer, child);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            List<Node> repeated = (List<Node>) field.getValue();
+            writer.writeStartArray();
+            for (Node sibling : repeated) {
+                writeValue(writer, sibling);
+            }
+            writer.writeEndArray();
+        }
+    }
+
+    private static void writeValue(BsonBinaryWriter writer, Node node) {
+        if (node.children == null) {
+            writer.writeString(node.text == null ? "" : node.text);
+        } else {
+            writer.writeStartDocument();
+            writeFields(writer, node);
+            writer.writeEndDocument();
+        }
+    }
+
+    // elemento (ou atributo) lido; folha quando children == null
+    private static final class Node {
+        private final String name;
+        private List<Node> children;
+        private String text;
+        // só usado quando o texto chega em mais de um evento
+        private StringBuilder pending;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        Node(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        void addChild(Node child) {
+            if (children == null) {
+                children = new ArrayList<>(4);
+            }
+            children.add(child);
+        }
+
+        void appendText(char[] chars, int start, int length, StringInterner interner) {
+            if (text == null) {
+                text = interner != null ? interner.intern(chars, start, length) : new String(chars, start, length);
+                return;
+            }
+            if (pending == null) {
+                pending = new StringBuilder(text.length() + length).append(text);
+            }
+            pending.append(chars, start, length);
+        }
+
+        private String takeText() {
+            String value = pending != null ? pending.toString() : text;
+            text = null;
+            pending = null;
+            return value;
+        }
+
+        // texto misto (elemento com filhos/atributos) vai na chave "", como no Jackson
+        void flushMixedText() {
+            String value = takeText();
+            if (value != null && !value.isBlank()) {
+                addChild(new Node("", value));
+            }
+        }
+
+        void close() {
+            if (children == null) {
+                String value = takeText();
+                text = value == null ? "" : value;
+            } else {
+                flushMixedText();
+            }
+        }
+    }
+}
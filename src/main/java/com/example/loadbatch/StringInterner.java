@@ -0,0 +1,152 @@
+package com.example.loadbatch;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache de strings de tamanho fixo, sem lock, para os valores que se repetem entre faturas (operadora, categorias,
+ * descrições de plano, tipos de imposto, alíquotas...). A busca é feita direto sobre o {@code char[]} do parser, então
+ * um acerto não aloca nada.
+ * <p>
+ * Mapeamento direto (uma entrada por posição, a mais nova substitui a antiga). Para valores únicos (CNPJ do
+ * cliente, datas) não expulsarem os repetidos, um valor só entra no cache na segunda vez em que aparece na mesma
+ * posição. Strings maiores que {@code maxLength} não passam pelo cache. Corridas entre threads só custam um acerto
+ * perdido: {@code String} é imutável e segura para publicação sem sincronização.
+ */
+public class StringInterner implements MeterBinder {
+
+    private final String[] table;
+    // hash do último valor recusado em cada posição (admissão na segunda ocorrência)
+    private final int[] doorkeeper;
+    private final int mask;
+    private final int maxLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param size arredondado para potência de 2
+     */
+    public StringInterner(int size, int maxLength) {
+        int capacity = Integer.highestOneBit(Math.max(16, size - 1)) << 1;
+        this.table = new String[capacity];
+        this.doorkeeper = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxLength = maxLength;
+    }
+
+    public String intern(char[] chars, int start, int length) {
+        if (length > maxLength) {
+            return new String(chars, start, length);
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int index = spread(hash) & mask;
+        String cached = table[index];
+        if (cached != null && matches(cached, chars, start, length)) {
+            hits.increment();
+            return cached;
+        }
+        return admit(index, hash, new String(chars, start, length));
+    }
+
+    public String intern(String value) {
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int index = spread(hash) & mask;
+        String cached = table[index];
+        if (value.equals(cached)) {
+            hits.increment();
+            return cached;
+        }
+        return admit(index, hash, value);
+    }
+
+    // caminho jackson: troca as folhas String do Map por instâncias do cache (menos memória retida no chunk)
+    @SuppressWarnings("unchecked")
+    public void internValues(Map<String, Object> map) {
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String text) {
+                entry.setValue(intern(text));
+            } else if (value instanceof Map<?, ?> nested) {
+                internValues((Map<String, Object>) nested);
+            } else if (value instanceof List<?> list) {
+                internValues((List<Object>) list);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void internValues(List<Object> list) {
+        for (int i = 0; i < list.size(); i++) {
+            Object value = list.get(i);
+            if (value instanceof String text) {
+                list.set(i, intern(text));
+            } else if (value instanceof Map<?, ?> nested) {
+                internValues((Map<String, Object>) nested);
+            } else if (value instanceof List<?> inner) {
+                internValues((List<Object>) inner);
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("load.batch.intern.hits", this, StringInterner::hits)
+            .description("Parsed strings served from the intern cache").register(registry);
+        FunctionCounter.builder("load.batch.intern.misses", this, StringInterner::misses)
+            .description("Parsed strings allocated because they were not in the intern cache").register(registry);
+        Gauge.builder("load.batch.intern.hit.ratio", this, StringInterner::hitRatio)
+            .description("Intern cache hit ratio since start").register(registry);
+    }
+
+    private String admit(int index, int hash, String value) {
+        misses.increment();
+        if (doorkeeper[index] == hash) {
+            table[index] = value;
+        } else {
+            doorkeeper[index] = hash;
+        }
+        return value;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String cached, char[] chars, int start, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
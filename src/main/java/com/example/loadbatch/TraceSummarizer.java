@@ -0,0 +1,211 @@
+package com.example.loadbatch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Resumo de um ou mais traces do {@link FileTraceSink}: tempos por etapa, correlação entre tamanho e latência,
+ * latência por faixa de tamanho, os arquivos mais lentos e os mais lentos para o tamanho que têm (maior resíduo da
+ * reta tamanho x conversão), que são os candidatos a trabalho no parser.
+ * <p>
+ * Uso: {@code ./gradlew traceSummary -PtraceArgs="traces/trace-20261017-101500.lbt --top=30"}
+ */
+public class TraceSummarizer {
+
+    private static final int SIZE_BUCKETS = 5;
+
+    public record Row(String name, long size, long readNanos, long convertNanos, long writeNanos, String thread, long chunk,
+            FileTrace.Outcome outcome) {
+
+        public long totalNanos() {
+            return readNanos + convertNanos + writeNanos;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int top = 20;
+        List<Row> rows = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--top=")) {
+                top = Integer.parseInt(arg.substring("--top=".length()));
+            } else {
+                rows.addAll(read(Path.of(arg)));
+            }
+        }
+        if (rows.isEmpty()) {
+            System.err.println("Usage: TraceSummarizer <trace.lbt>... [--top=N]");
+            System.exit(1);
+        }
+        summarize(rows, top, System.out);
+    }
+
+    public static List<Row> read(Path file) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[FileTraceSink.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, FileTraceSink.MAGIC)) {
+                throw new IOException("Not a load-batch trace file: " + file);
+            }
+            FileTrace.Outcome[] outcomes = FileTrace.Outcome.values();
+            while (true) {
+                int count;
+                try {
+                    count = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                String[] dictionary = new String[in.readInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = in.readUTF();
+                }
+                String[] names = new String[count];
+                for (int i = 0; i < count; i++) {
+                    names[i] = in.readUTF();
+                }
+                long[] sizes = readColumn(in, count);
+                long[] read = readColumn(in, count);
+                long[] convert = readColumn(in, count);
+                long[] write = readColumn(in, count);
+                int[] threads = new int[count];
+                for (int i = 0; i < count; i++) {
+                    threads[i] = in.readInt();
+                }
+                long[] chunks = readColumn(in, count);
+                byte[] outcome = new byte[count];
+                in.readFully(outcome);
+                for (int i = 0; i < count; i++) {
+                    rows.add(new Row(names[i], sizes[i], read[i], convert[i], write[i], dictionary[threads[i]], chunks[i],
+                        outcomes[outcome[i]]));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static long[] readColumn(DataInputStream in, int count) throws IOException {
+        long[] column = new long[count];
+        for (int i = 0; i < count; i++) {
+            column[i] = in.readLong();
+        }
+        return column;
+    }
+
+    public static void summarize(List<Row> rows, int top, PrintStream out) {
+        Map<FileTrace.Outcome, Integer> outcomes = new EnumMap<>(FileTrace.Outcome.class);
+        long bytes = 0;
+        for (Row row : rows) {
+            outcomes.merge(row.outcome(), 1, Integer::sum);
+            bytes += row.size();
+        }
+        out.printf(Locale.ROOT, "%d files traced, %.1f MB %s%n", rows.size(), bytes / 1e6, outcomes);
+
+        out.println();
+        out.println("stage      mean ms    p50 ms    p99 ms    max ms   share");
+        long total = rows.stream().mapToLong(Row::totalNanos).sum();
+        stage(out, "read", rows, Row::readNanos, total);
+        stage(out, "convert", rows, Row::convertNanos, total);
+        stage(out, "write", rows, Row::writeNanos, total);
+
+        // tamanho x conversão só nos convertidos (erro de parse sai cedo e distorce a reta)
+        List<Row> converted = rows.stream().filter(r -> r.outcome() != FileTrace.Outcome.PROCESS_ERROR).toList();
+        double[] fit = fit(converted);
+        out.println();
+        out.printf(Locale.ROOT, "size x convert: r=%.3f, convert ~ %.3f ms + %.2f us/KB%n",
+            correlation(converted, Row::convertNanos), fit[0] / 1e6, fit[1] * 1024 / 1e3);
+        out.printf(Locale.ROOT, "size x total:   r=%.3f%n", correlation(converted, Row::totalNanos));
+
+        out.println();
+        out.println("size range (KB)       files  p50 convert ms  p50 us/KB");
+        List<Row> bySize = converted.stream().sorted(Comparator.comparingLong(Row::size)).toList();
+        for (int b = 0; b < SIZE_BUCKETS && !bySize.isEmpty(); b++) {
+            List<Row> bucket = bySize.subList(b * bySize.size() / SIZE_BUCKETS, (b + 1) * bySize.size() / SIZE_BUCKETS);
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            long[] perKb = bucket.stream().mapToLong(r -> r.convertNanos() * 1024 / Math.max(1, r.size())).sorted().toArray();
+            out.printf(Locale.ROOT, "%8.1f - %-8.1f %8d %15.3f %10.2f%n",
+                bucket.get(0).size() / 1024.0, bucket.get(bucket.size() - 1).size() / 1024.0, bucket.size(),
+                percentile(bucket.stream().mapToLong(Row::convertNanos).sorted().toArray(), 0.5) / 1e6,
+                percentile(perKb, 0.5) / 1e3);
+        }
+
+        out.println();
+        out.printf("slowest %d files (read + convert + write)%n", Math.min(top, rows.size()));
+        printRows(out, rows.stream().sorted(Comparator.comparingLong(Row::totalNanos).reversed()).limit(top).toList());
+
+        out.println();
+        out.printf("slowest %d for their size (convert above the size fit)%n", Math.min(top, converted.size()));
+        printRows(out, converted.stream()
+            .sorted(Comparator.comparingDouble((Row r) -> r.convertNanos() - (fit[0] + fit[1] * r.size())).reversed())
+            .limit(top).toList());
+    }
+
+    private static void stage(PrintStream out, String label, List<Row> rows, ToLongFunction<Row> nanos, long total) {
+        long[] values = rows.stream().mapToLong(nanos).sorted().toArray();
+        long sum = Arrays.stream(values).sum();
+        out.printf(Locale.ROOT, "%-8s %9.3f %9.3f %9.3f %9.3f %6.1f%%%n", label, sum / 1e6 / Math.max(1, values.length),
+            percentile(values, 0.5) / 1e6, percentile(values, 0.99) / 1e6, values.length == 0 ? 0 : values[values.length - 1] / 1e6,
+            total == 0 ? 0 : 100.0 * sum / total);
+    }
+
+    private static void printRows(PrintStream out, List<Row> rows) {
+        out.println("   size KB   read ms convert ms  write ms  thread           chunk  outcome        file");
+        for (Row row : rows) {
+            out.printf(Locale.ROOT, "%10.1f %9.3f %10.3f %9.3f  %-15s %6d  %-13s  %s%n", row.size() / 1024.0,
+                row.readNanos() / 1e6, row.convertNanos() / 1e6, row.writeNanos() / 1e6, row.thread(), row.chunk(),
+                row.outcome(), row.name());
+        }
+    }
+
+    // mínimos quadrados de nanos de conversão sobre bytes: {intercepto, inclinação}
+    private static double[] fit(List<Row> rows) {
+        double meanSize = rows.stream().mapToLong(Row::size).average().orElse(0);
+        double meanNanos = rows.stream().mapToLong(Row::convertNanos).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+        for (Row row : rows) {
+            covariance += (row.size() - meanSize) * (row.convertNanos() - meanNanos);
+            variance += (row.size() - meanSize) * (row.size() - meanSize);
+        }
+        double slope = variance == 0 ? 0 : covariance / variance;
+        return new double[] {meanNanos - slope * meanSize, slope};
+    }
+
+    // Pearson entre tamanho e a latência escolhida
+    private static double correlation(List<Row> rows, ToLongFunction<Row> nanos) {
+        double meanSize = rows.stream().mapToLong(Row::size).average().orElse(0);
+        double meanNanos = rows.stream().mapToLong(nanos).average().orElse(0);
+        double covariance = 0;
+        double sizeVariance = 0;
+        double nanosVariance = 0;
+        for (Row row : rows) {
+            double size = row.size() - meanSize;
+            double latency = nanos.applyAsLong(row) - meanNanos;
+            covariance += size * latency;
+            sizeVariance += size * size;
+            nanosVariance += latency * latency;
+        }
+        return sizeVariance == 0 || nanosVariance == 0 ? 0 : covariance / Math.sqrt(sizeVariance * nanosVariance);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+}
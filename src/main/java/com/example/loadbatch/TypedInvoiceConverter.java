@@ -0,0 +1,396 @@
+package com.example.loadbatch;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.Decimal128;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converte a fatura do esquema do {@code mock_data.py} direto para BSON tipado, numa única passada StAX guiada por
+ * uma tabela de campos montada uma vez ({@link #INVOICE}): valores e alíquotas viram {@code Decimal128}, datas viram
+ * {@code Date}, quantidade vira int32, e {@code itens}/{@code impostos} viram arrays de documentos (mesmo com um
+ * único {@code <item>}), em vez de {@code {"item": [...]}} com tudo em string.
+ * <p>
+ * Qualquer coisa fora da tabela (elemento desconhecido ou repetido, atributo, texto que não converte para o tipo)
+ * faz {@link #convert} devolver null, e o chamador usa o {@link StaxBsonConverter} genérico para aquele arquivo.
+ * Campos ausentes são só omitidos.
+ */
+public class TypedInvoiceConverter {
+
+    private static final long EXPONENT_BIAS = 6176;
+
+    private enum Kind { STRING, DECIMAL, INT, DATE, OBJECT, ARRAY, MAP }
+
+    private static final Field INVOICE = object("invoice",
+        leaf("tipo", Kind.STRING),
+        object("operadora", leaf("nome", Kind.STRING), leaf("cnpj", Kind.STRING)),
+        object("cliente", leaf("razaoSocial", Kind.STRING), leaf("cnpj", Kind.STRING)),
+        // número de contrato é identificador, não quantidade
+        object("contrato", leaf("numero", Kind.STRING)),
+        object("periodoReferencia", leaf("inicio", Kind.DATE), leaf("fim", Kind.DATE)),
+        object("datas", leaf("emissao", Kind.DATE), leaf("vencimento", Kind.DATE)),
+        leaf("moeda", Kind.STRING),
+        array("itens", object("item",
+            leaf("categoria", Kind.STRING),
+            leaf("descricao", Kind.STRING),
+            leaf("quantidade", Kind.INT),
+            leaf("unidade", Kind.STRING),
+            leaf("valorBase", Kind.DECIMAL),
+            array("impostos", object("item",
+                leaf("tipo", Kind.STRING),
+                leaf("aliquota", Kind.DECIMAL),
+                leaf("baseCalculo", Kind.DECIMAL),
+                leaf("valor", Kind.DECIMAL))),
+            leaf("subtotalImpostos", Kind.DECIMAL),
+            leaf("total", Kind.DECIMAL))),
+        object("totais",
+            leaf("valorServicosSemImpostos", Kind.DECIMAL),
+            // ICMS, PIS, COFINS... o nome do imposto é a chave
+            map("impostos", Kind.DECIMAL),
+            leaf("totalImpostos", Kind.DECIMAL),
+            leaf("totalGeral", Kind.DECIMAL)),
+        object("pagamento", leaf("metodo", Kind.STRING), leaf("status", Kind.STRING)),
+        object("auditoria", leaf("criadoEm", Kind.DATE), leaf("atualizadoEm", Kind.DATE), leaf("fonte", Kind.STRING)));
+
+    private final XMLInputFactory inputFactory;
+    // null = sem cache de strings
+    private final StringInterner interner;
+
+    public TypedInvoiceConverter() {
+        this(null);
+    }
+
+    public TypedInvoiceConverter(StringInterner interner) {
+        this.interner = interner;
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @return o documento, ou null quando o XML não segue o esquema da fatura (o chamador cai no conversor genérico)
+     */
+    public RawBsonDocument convert(InputStream in, String sourceFile, Long contentHash) throws XMLStreamException, IOException {
+        // Decimal128 ocupa 16 bytes: o BSON tipado fica perto do tamanho do XML, e o buffer não precisa crescer
+        int sizeHint = Math.max(256, in.available());
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT
+                    || !INVOICE.name.equals(reader.getLocalName()) || reader.getAttributeCount() > 0) {
+                return null;
+            }
+            BasicOutputBuffer buffer = new BasicOutputBuffer(sizeHint);
+            try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+                writer.writeStartDocument();
+                if (!writeObject(reader, writer, INVOICE)) {
+                    return null;
+                }
+                if (sourceFile != null) {
+                    writer.writeString("source_file", sourceFile);
+                }
+                if (contentHash != null) {
+                    writer.writeInt64("content_hash", contentHash);
+                }
+                writer.writeEndDocument();
+            }
+            return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+        } finally {
+            reader.close();
+        }
+    }
+
+    // filhos do elemento corrente até o END_ELEMENT dele; false = fora do esquema
+    private boolean writeObject(XMLStreamReader reader, BsonBinaryWriter writer, Field object) throws XMLStreamException {
+        long seen = 0;
+        Set<String> seenKeys = object.kind == Kind.MAP ? new HashSet<>() : null;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    String name = reader.getLocalName();
+                    Field field;
+                    if (seenKeys != null) {
+                        field = seenKeys.add(name) ? object.element : null;
+                    } else {
+                        field = object.children.get(name);
+                        if (field != null && (seen & field.bit) != 0) {
+                            field = null;
+                        } else if (field != null) {
+                            seen |= field.bit;
+                        }
+                    }
+                    if (field == null || reader.getAttributeCount() > 0) {
+                        return false;
+                    }
+                    writer.writeName(name);
+                    if (!writeValue(reader, writer, field)) {
+                        return false;
+                    }
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                    if (!isBlank(reader)) {
+                        return false;
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    return true;
+                }
+                case XMLStreamConstants.END_DOCUMENT -> {
+                    return false;
+                }
+                default -> {
+                    // comentários e PIs não entram no documento
+                }
+            }
+        }
+    }
+
+    private boolean writeValue(XMLStreamReader reader, BsonBinaryWriter writer, Field field) throws XMLStreamException {
+        switch (field.kind) {
+            case OBJECT, MAP -> {
+                writer.writeStartDocument();
+                if (!writeObject(reader, writer, field)) {
+                    return false;
+                }
+                writer.writeEndDocument();
+                return true;
+            }
+            case ARRAY -> {
+                writer.writeStartArray();
+                if (!writeArray(reader, writer, field.element)) {
+                    return false;
+                }
+                writer.writeEndArray();
+                return true;
+            }
+            default -> {
+                String text = leafText(reader);
+                return text != null && writeLeaf(writer, field.kind, text);
+            }
+        }
+    }
+
+    // cada filho tem que ser o elemento da lista (<item>)
+    private boolean writeArray(XMLStreamReader reader, BsonBinaryWriter writer, Field element) throws XMLStreamException {
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    if (!element.name.equals(reader.getLocalName()) || reader.getAttributeCount() > 0) {
+                        return false;
+                    }
+                    if (!writeValue(reader, writer, element)) {
+                        return false;
+                    }
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                    if (!isBlank(reader)) {
+                        return false;
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    return true;
+                }
+                case XMLStreamConstants.END_DOCUMENT -> {
+                    return false;
+                }
+                default -> {
+                    // comentários e PIs
+                }
+            }
+        }
+    }
+
+    // texto de uma folha; null se tiver elemento filho
+    private String leafText(XMLStreamReader reader) throws XMLStreamException {
+        String text = null;
+        StringBuilder pending = null;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    if (text == null) {
+                        text = interner != null
+                            ? interner.intern(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength())
+                            : reader.getText();
+                    } else {
+                        if (pending == null) {
+                            pending = new StringBuilder(text);
+                        }
+                        pending.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    return pending != null ? pending.toString() : text == null ? "" : text;
+                }
+                case XMLStreamConstants.START_ELEMENT, XMLStreamConstants.END_DOCUMENT -> {
+                    return null;
+                }
+                default -> {
+                    // comentários e PIs
+                }
+            }
+        }
+    }
+
+    private static boolean writeLeaf(BsonBinaryWriter writer, Kind kind, String text) {
+        try {
+            switch (kind) {
+                case DECIMAL -> writer.writeDecimal128(decimal(text.strip()));
+                case INT -> writer.writeInt32(Integer.parseInt(text.strip()));
+                case DATE -> writer.writeDateTime(epochMillis(text.strip()));
+                default -> writer.writeString(text);
+            }
+            return true;
+        } catch (NumberFormatException | DateTimeException e) {
+            return false;
+        }
+    }
+
+    // "-123.45" com até 18 dígitos vai direto para a codificação BID (expoente = -casas decimais); o resto, Decimal128.parse
+    static Decimal128 decimal(String text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+        long coefficient = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9' && digits < 18) {
+                coefficient = coefficient * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return Decimal128.parse(text);
+            }
+        }
+        if (digits == 0) {
+            return Decimal128.parse(text);
+        }
+        long exponent = EXPONENT_BIAS - Math.max(0, scale);
+        return Decimal128.fromIEEE754BIDEncoding((negative ? Long.MIN_VALUE : 0) | exponent << 49, coefficient);
+    }
+
+    // "2026-02-01T00:00:00Z" / "...00.916787Z" (mock_data.py) sem DateTimeFormatter; outros formatos, Instant.parse
+    static long epochMillis(String text) {
+        int length = text.length();
+        if (length < 20 || text.charAt(length - 1) != 'Z' || text.charAt(4) != '-' || text.charAt(7) != '-'
+                || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return Instant.parse(text).toEpochMilli();
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        int hour = digits(text, 11, 13);
+        int minute = digits(text, 14, 16);
+        int second = digits(text, 17, 19);
+        int millis = 0;
+        if (length > 20) {
+            int fractionDigits = length - 21;
+            if (text.charAt(19) != '.' || fractionDigits < 1 || fractionDigits > 9 || digits(text, 20, length - 1) < 0) {
+                return Instant.parse(text).toEpochMilli();
+            }
+            // truncado em milissegundos, como o Instant.toEpochMilli
+            millis = digits(text, 20, 20 + Math.min(3, fractionDigits));
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59 || millis < 0) {
+            return Instant.parse(text).toEpochMilli();
+        }
+        return LocalDate.of(year, month, day).toEpochDay() * 86_400_000L
+            + ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+    }
+
+    // -1 se tiver algo que não é dígito
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isBlank(XMLStreamReader reader) {
+        char[] chars = reader.getTextCharacters();
+        int end = reader.getTextStart() + reader.getTextLength();
+        for (int i = reader.getTextStart(); i < end; i++) {
+            if (!Character.isWhitespace(chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Field leaf(String name, Kind kind) {
+        return new Field(name, kind, null, null);
+    }
+
+    private static Field object(String name, Field... children) {
+        Map<String, Field> byName = new HashMap<>();
+        for (int i = 0; i < children.length; i++) {
+            byName.put(children[i].name, children[i].withBit(1L << i));
+        }
+        return new Field(name, Kind.OBJECT, byName, null);
+    }
+
+    private static Field array(String name, Field element) {
+        return new Field(name, Kind.ARRAY, null, element);
+    }
+
+    // chaves livres, todas do mesmo tipo
+    private static Field map(String name, Kind valueKind) {
+        return new Field(name, Kind.MAP, null, leaf("", valueKind));
+    }
+
+    private static final class Field {
+        private final String name;
+        private final Kind kind;
+        private final Map<String, Field> children;
+        private final Field element;
+        // posição no objeto pai, para detectar elemento repetido
+        private final long bit;
+
+        private Field(String name, Kind kind, Map<String, Field> children, Field element) {
+            this(name, kind, children, element, 0);
+        }
+
+        private Field(String name, Kind kind, Map<String, Field> children, Field element, long bit) {
+            this.name = name;
+            this.kind = kind;
+            this.children = children;
+            this.element = element;
+            this.bit = bit;
+        }
+
+        private Field withBit(long bit) {
+            return new Field(name, kind, children, element, bit);
+        }
+    }
+}
@@ -6,13 +6,29 @@ import org.springframework.batch.item.file.ResourceAwareItemReaderItemStream;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class WholeFileItemReader implements ItemStreamReader<FilePayload>, ResourceAwareItemReaderItemStream<FilePayload> {
 
+    // null = modo heap (Files.readAllBytes)
+    private final DirectBufferPool bufferPool;
+
     private Resource resource;
     private boolean read = false;
 
+    public WholeFileItemReader() {
+        this(null);
+    }
+
+    // modo mapped: arquivos >= bufferSize do pool são mapeados, menores vão para um buffer direto do pool
+    public WholeFileItemReader(DirectBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
     @Override
     public void setResource(Resource resource) {
         this.resource = resource;
@@ -25,14 +41,46 @@ public class WholeFileItemReader implements ItemStreamReader<FilePayload>, Resou
             return null;
         }
         read = true;
+        return load(resource);
+    }
+
+    // thread-safe: usado também pelo PrefetchingItemReader, uma thread virtual por arquivo
+    FilePayload load(Resource resource) {
         try {
-            byte[] content = Files.readAllBytes(resource.getFile().toPath());
-            return new FilePayload(resource.getFilename(), content);
+            FilePayload payload = load(resource.getFile().toPath(), resource.getFilename());
+            payload.setLastModified(resource.lastModified());
+            return payload;
         } catch (IOException e) {
             throw new RuntimeException("Failed to read file: " + resource.getFilename(), e);
         }
     }
 
+    private FilePayload load(Path path, String filename) throws IOException {
+        if (bufferPool == null) {
+            return new FilePayload(filename, Files.readAllBytes(path));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= bufferPool.getBufferSize()) {
+                return new FilePayload(filename, channel.map(FileChannel.MapMode.READ_ONLY, 0, size), null);
+            }
+            ByteBuffer buffer = bufferPool.acquire();
+            if (buffer == null) {
+                return new FilePayload(filename, Files.readAllBytes(path));
+            }
+            try {
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // lê até EOF ou encher o buffer
+                }
+            } catch (IOException e) {
+                bufferPool.release(buffer);
+                throw e;
+            }
+            buffer.flip();
+            return new FilePayload(filename, buffer, bufferPool);
+        }
+    }
+
     @Override
     public void open(ExecutionContext executionContext) {}
 
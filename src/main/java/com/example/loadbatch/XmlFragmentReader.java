@@ -0,0 +1,440 @@
+package com.example.loadbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lê um XML grande com muitas faturas como um pacote: cada elemento {@code <invoice>} (ou o nome configurado) vira
+ * uma entrada própria, com nome {@code arquivo@offset} (offset em bytes do {@code <} do elemento), que é o que vai
+ * para {@code source_file}. O arquivo é mapeado em janelas de {@value #WINDOW_BYTES} bytes e cada entrada é uma fatia
+ * da janela, sem cópia para o heap; só a busca pelos limites dos elementos é sequencial, a conversão acontece em
+ * paralelo nas threads do step.
+ * <p>
+ * A busca é por bytes (nome do elemento em ASCII, arquivo em UTF-8 ou outro encoding compatível com ASCII): pula
+ * comentários, CDATA, instruções de processamento e DOCTYPE e conta elementos aninhados de mesmo nome. Se a declaração
+ * XML tem outro encoding, ela é repetida na frente de cada entrada (aí a entrada é copiada). Declarações de namespace
+ * do elemento raiz não vão para as entradas. Um arquivo cujo primeiro elemento já é o procurado (uma fatura só), sem
+ * nenhum elemento com esse nome ou em UTF-16 é entregue inteiro, com o próprio nome.
+ * <p>
+ * Não é thread-safe: cada instância percorre um arquivo (ou uma faixa dele) em sequência.
+ */
+public final class XmlFragmentReader extends ArchiveEntryReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlFragmentReader.class);
+    public static final String OFFSET_SEPARATOR = "@";
+    private static final int WINDOW_BYTES = 64 << 20;
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._-]+)[\"']");
+
+    private final XmlRangeResource range;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final byte[] element;
+    private final long lastModified;
+    // declaração XML repetida em cada entrada; null em UTF-8
+    private final byte[] declaration;
+    private final boolean whole;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long cursor;
+    private boolean done;
+
+    private XmlFragmentReader(XmlRangeResource range, FileChannel channel) throws IOException {
+        super(range.sourceName);
+        this.range = range;
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.element = range.element.getBytes(StandardCharsets.US_ASCII);
+        this.lastModified = range.lastModified();
+        this.cursor = range.from;
+        String prolog = prolog();
+        this.declaration = nonUtf8Declaration(prolog);
+        boolean utf16 = prolog == null;
+        long first = range.from == 0 && !utf16 ? firstStartTag() : -1;
+        this.whole = utf16 || (first >= 0 && nameAt(first + 1));
+    }
+
+    static XmlFragmentReader open(XmlRangeResource range) throws IOException {
+        FileChannel channel = FileChannel.open(range.getFile().toPath(), StandardOpenOption.READ);
+        try {
+            return new XmlFragmentReader(range, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * XML a partir de {@code minSize} bytes vira uma {@link XmlRangeResource}; com {@code rangeBytes > 0} é dividido em
+     * faixas de aproximadamente esse tamanho, cortadas no início de um elemento, para o particionador espalhar o
+     * arquivo entre os workers (custa uma varredura do arquivo). Outros arquivos voltam como estão.
+     */
+    public static List<Resource> split(Resource resource, long minSize, String element, long rangeBytes) throws IOException {
+        if (minSize <= 0 || ArchiveEntryReader.isArchive(resource)
+                || !resource.getFilename().toLowerCase(Locale.ROOT).endsWith(".xml")) {
+            return List.of(resource);
+        }
+        long size = resource.contentLength();
+        if (size < minSize) {
+            return List.of(resource);
+        }
+        XmlRangeResource all = new XmlRangeResource(resource, element, 0, size, size);
+        if (rangeBytes <= 0 || size <= rangeBytes) {
+            return List.of(all);
+        }
+        List<Resource> ranges = new ArrayList<>();
+        try (XmlFragmentReader reader = open(all)) {
+            if (reader.whole) {
+                return List.of(all);
+            }
+            long from = 0;
+            for (long start = reader.nextElement(0); start >= 0; start = reader.nextElement(reader.elementEnd(start))) {
+                if (start - from >= rangeBytes) {
+                    ranges.add(new XmlRangeResource(resource, element, from, start, size));
+                    from = start;
+                }
+            }
+            ranges.add(new XmlRangeResource(resource, element, from, size, size));
+        }
+        return ranges;
+    }
+
+    @Override
+    protected FilePayload readNext() throws IOException {
+        if (done) {
+            return null;
+        }
+        if (whole) {
+            done = true;
+            return wholeFile();
+        }
+        long start = nextElement(cursor);
+        if (start < 0 || start >= range.to) {
+            done = true;
+            if (start < 0 && position() == 0 && range.complete) {
+                logger.warn("No <{}> element in {}; reading it as a single document", range.element, range.sourceName);
+                return wholeFile();
+            }
+            return null;
+        }
+        cursor = elementEnd(start);
+        ByteBuffer bytes = slice(start, cursor);
+        FilePayload payload;
+        if (declaration == null) {
+            payload = new FilePayload(range.sourceName + OFFSET_SEPARATOR + start, bytes, null);
+        } else {
+            byte[] content = new byte[declaration.length + bytes.remaining()];
+            System.arraycopy(declaration, 0, content, 0, declaration.length);
+            bytes.get(content, declaration.length, content.length - declaration.length);
+            payload = new FilePayload(range.sourceName + OFFSET_SEPARATOR + start, content);
+        }
+        payload.setLastModified(lastModified);
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private FilePayload wholeFile() throws IOException {
+        FilePayload payload = new FilePayload(range.sourceName, channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize), null);
+        payload.setLastModified(lastModified);
+        return payload;
+    }
+
+    // offset do próximo elemento procurado a partir de pos, ou -1
+    private long nextElement(long pos) throws IOException {
+        while ((pos = indexOf((byte) '<', pos)) >= 0) {
+            byte next = at(pos + 1);
+            if (next == '!' || next == '?') {
+                pos = skipMarkup(pos);
+            } else if (next != '/' && nameAt(pos + 1)) {
+                return pos;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    // offset logo depois do fim do elemento que começa em start
+    private long elementEnd(long start) throws IOException {
+        int depth = 0;
+        long pos = start;
+        while ((pos = indexOf((byte) '<', pos)) >= 0) {
+            byte next = at(pos + 1);
+            if (next == '!' || next == '?') {
+                pos = skipMarkup(pos);
+            } else if (next == '/' && nameAt(pos + 2)) {
+                long close = indexOf((byte) '>', pos + 2);
+                if (close < 0) {
+                    break;
+                }
+                if (--depth == 0) {
+                    return close + 1;
+                }
+                pos = close + 1;
+            } else if (next != '/' && nameAt(pos + 1)) {
+                long close = tagEnd(pos + 1);
+                if (close < 0) {
+                    break;
+                }
+                if (at(close - 1) != '/') {
+                    depth++;
+                } else if (depth == 0) {
+                    return close + 1;
+                }
+                pos = close + 1;
+            } else {
+                pos++;
+            }
+        }
+        throw new IOException("Unterminated <" + range.element + "> at offset " + start + " of " + range.sourceName);
+    }
+
+    // o primeiro elemento do arquivo, depois da declaração, comentários e DOCTYPE
+    private long firstStartTag() throws IOException {
+        long pos = 0;
+        while ((pos = indexOf((byte) '<', pos)) >= 0) {
+            byte next = at(pos + 1);
+            if (next != '!' && next != '?') {
+                return next == '/' ? -1 : pos;
+            }
+            pos = skipMarkup(pos);
+        }
+        return -1;
+    }
+
+    // comentário, CDATA, instrução de processamento ou DOCTYPE começando em pos; devolve o offset seguinte
+    private long skipMarkup(long pos) throws IOException {
+        long close;
+        if (startsWith(pos, "<!--")) {
+            close = indexOf("-->", pos + 4);
+            return close < 0 ? fileSize : close + 3;
+        }
+        if (startsWith(pos, "<![CDATA[")) {
+            close = indexOf("]]>", pos + 9);
+            return close < 0 ? fileSize : close + 3;
+        }
+        if (at(pos + 1) == '?') {
+            close = indexOf("?>", pos + 2);
+            return close < 0 ? fileSize : close + 2;
+        }
+        // DOCTYPE: o subconjunto interno [...] pode ter '>'
+        int brackets = 0;
+        for (long i = pos + 2; i < fileSize; i++) {
+            byte b = at(i);
+            if (b == '[') {
+                brackets++;
+            } else if (b == ']') {
+                brackets--;
+            } else if (b == '>' && brackets <= 0) {
+                return i + 1;
+            }
+        }
+        return fileSize;
+    }
+
+    // '>' que fecha a tag aberta em pos; valores de atributo podem ter '>'
+    private long tagEnd(long pos) throws IOException {
+        for (long i = pos; i < fileSize; i++) {
+            byte b = at(i);
+            if (b == '"' || b == '\'') {
+                i = indexOf(b, i + 1);
+                if (i < 0) {
+                    return -1;
+                }
+            } else if (b == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // o nome do elemento começa em pos e termina ali (não é prefixo de outro nome)
+    private boolean nameAt(long pos) throws IOException {
+        if (pos + element.length >= fileSize) {
+            return false;
+        }
+        for (int i = 0; i < element.length; i++) {
+            if (at(pos + i) != element[i]) {
+                return false;
+            }
+        }
+        byte after = at(pos + element.length);
+        return after == '>' || after == '/' || after == ' ' || after == '\t' || after == '\r' || after == '\n';
+    }
+
+    private boolean startsWith(long pos, String text) throws IOException {
+        if (pos + text.length() > fileSize) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (at(pos + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long indexOf(String text, long pos) throws IOException {
+        byte first = (byte) text.charAt(0);
+        while ((pos = indexOf(first, pos)) >= 0) {
+            if (startsWith(pos, text)) {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private long indexOf(byte b, long pos) throws IOException {
+        while (pos < fileSize) {
+            mapContaining(pos);
+            int limit = window.limit();
+            for (int i = (int) (pos - windowStart); i < limit; i++) {
+                if (window.get(i) == b) {
+                    return windowStart + i;
+                }
+            }
+            pos = windowStart + limit;
+        }
+        return -1;
+    }
+
+    private byte at(long pos) throws IOException {
+        if (pos >= fileSize) {
+            return 0;
+        }
+        mapContaining(pos);
+        return window.get((int) (pos - windowStart));
+    }
+
+    private void mapContaining(long pos) throws IOException {
+        if (window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+            map(pos, WINDOW_BYTES);
+        }
+    }
+
+    private void map(long start, long length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, fileSize - start));
+        windowStart = start;
+    }
+
+    // [start, stop) numa janela só; um elemento maior que a janela ganha uma janela do seu tamanho
+    private ByteBuffer slice(long start, long stop) throws IOException {
+        long length = stop - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("<" + range.element + "> at offset " + start + " of " + range.sourceName + " is larger than 2GB");
+        }
+        if (start < windowStart || stop > windowStart + window.limit()) {
+            map(start, Math.max(WINDOW_BYTES, length));
+        }
+        return window.slice((int) (start - windowStart), (int) length);
+    }
+
+    // texto até o fim da declaração XML (ou "" sem declaração); null em UTF-16, que a busca por bytes não entende
+    private String prolog() throws IOException {
+        if (fileSize >= 2 && ((at(0) == (byte) 0xFE && at(1) == (byte) 0xFF) || (at(0) == (byte) 0xFF && at(1) == (byte) 0xFE))) {
+            return null;
+        }
+        long offset = fileSize >= 3 && at(0) == (byte) 0xEF && at(1) == (byte) 0xBB && at(2) == (byte) 0xBF ? 3 : 0;
+        if (!startsWith(offset, "<?xml")) {
+            return "";
+        }
+        long close = indexOf("?>", offset);
+        if (close < 0 || close - offset > 1024) {
+            return "";
+        }
+        byte[] text = new byte[(int) (close + 2 - offset)];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = at(offset + i);
+        }
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] nonUtf8Declaration(String prolog) {
+        if (prolog == null) {
+            return null;
+        }
+        Matcher encoding = ENCODING.matcher(prolog);
+        if (!encoding.find()) {
+            return null;
+        }
+        String name = encoding.group(1).toUpperCase(Locale.ROOT);
+        if (name.equals("UTF-8") || name.equals("UTF8") || name.equals("US-ASCII") || name.equals("ASCII")) {
+            return null;
+        }
+        return prolog.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Faixa [from, to) de um XML de várias faturas: as entradas são os elementos que começam dentro dela. A faixa
+     * inteira tem o nome do arquivo; as outras, {@code arquivo#from}.
+     */
+    static final class XmlRangeResource extends FileSystemResource {
+        private final String sourceName;
+        private final String element;
+        private final long from;
+        private final long to;
+        private final long fileSize;
+        private final boolean complete;
+
+        XmlRangeResource(Resource file, String element, long from, long to, long fileSize) throws IOException {
+            super(file.getFile());
+            this.sourceName = file.getFilename();
+            this.element = element;
+            this.from = from;
+            this.to = to;
+            this.fileSize = fileSize;
+            this.complete = from == 0 && to == fileSize;
+        }
+
+        @Override
+        public String getFilename() {
+            return complete ? sourceName : sourceName + "#" + from;
+        }
+
+        // bytes da faixa: é o custo que o particionador balanceia
+        @Override
+        public long contentLength() {
+            return to - from;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof XmlRangeResource range && super.equals(other) && range.from == from;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + Long.hashCode(from);
+        }
+
+        @Override
+        public String getDescription() {
+            return "<" + element + "> range [" + from + ", " + to + ") of " + super.getDescription();
+        }
+
+        // chave do ExecutionContext da partição (FilePartitioner); o nome do elemento não tem ':'
+        String key() {
+            return from + ":" + to + ":" + fileSize + ":" + element + ":" + sourceName;
+        }
+    }
+}